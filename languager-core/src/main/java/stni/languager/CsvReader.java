@@ -14,11 +14,20 @@ public class CsvReader implements Closeable {
     private static final char EOI = (char) -1;
     private final Reader in;
     private final char separator;
+    private final SymbolTable symbols;
     private char c;
 
     public CsvReader(Reader in, char separator) throws IOException {
+        this(in, separator, null);
+    }
+
+    /**
+     * @param symbols if not null, equal fields share one instance.
+     */
+    public CsvReader(Reader in, char separator, SymbolTable symbols) throws IOException {
         this.in = in;
         this.separator = separator;
+        this.symbols = symbols;
         read();
     }
 
@@ -31,10 +40,10 @@ public class CsvReader implements Closeable {
     }
 
     private String unescapeCsv(String value) {
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
-        }
-        return value;
+        final String unescaped = value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1).replace("\"\"", "\"")
+                : value;
+        return symbols == null ? unescaped : symbols.intern(unescaped);
     }
 
     public List<String> readLine() throws IOException {
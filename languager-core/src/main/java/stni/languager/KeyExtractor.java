@@ -7,20 +7,22 @@ import java.io.IOException;
 import java.util.*;
 
 import stni.languager.crawl.CrawlPattern;
-import stni.languager.crawl.FileCrawler;
+import stni.languager.crawl.CrawlPipeline;
 import stni.languager.crawl.FindRegexAction;
+import stni.languager.crawl.FindResultCache;
+import stni.languager.crawl.FindResultConsumer;
+import stni.languager.crawl.TemplateLexerAction;
 
 /**
  *
  */
 public class KeyExtractor {
-    private static final Comparator<FindResult> FIND_RESULT_SORTER = new Comparator<FindResult>() {
+
+    private static final Comparator<FindResult> START_SORTER = new Comparator<FindResult>() {
         public int compare(FindResult result1, FindResult result2) {
-            int res = result1.getPosition().getSource().compareTo(result2.getPosition().getSource());
-            if (res == 0) {
-                res = result1.getPosition().getLine() - result2.getPosition().getLine();
-            }
-            return res;
+            final int start1 = result1.getPosition().getStart();
+            final int start2 = result2.getPosition().getStart();
+            return start1 < start2 ? -1 : (start1 == start2 ? 0 : 1);
         }
     };
 
@@ -45,32 +47,152 @@ public class KeyExtractor {
     private final SortedMap<String, Message> messages = new TreeMap<String, Message>();
     private final Set<String> ignoredValues = new HashSet<String>();
     private final Map<String, FindResult> negatives = new HashMap<String, FindResult>();
+    private final Map<String, Integer> negativeSearches = new HashMap<String, Integer>();
     private final Map<File, List<FindResult>> resultsByLocation = new HashMap<File, List<FindResult>>();
     private final Map<String, FindResult> resultsByKey = new HashMap<String, FindResult>();
     private final Map<String, FindResult> resultsByValue = new HashMap<String, FindResult>();
     private final List<FindResultPair> sameKeyResults = new ArrayList<FindResultPair>();
     private final List<FindResultPair> sameValueResults = new ArrayList<FindResultPair>();
+    private final int threads;
+    private final FindResultCache cache;
+    private final SymbolTable symbols = new SymbolTable();
+    private final Languages languages = new Languages();
+    private final List<SearchResults> pendingSearches = new ArrayList<SearchResults>();
+    private int searches;
+    private int ioThreads;
     private boolean cleanedNegatives = true;
 
+    /**
+     * Takes over the results of one search.
+     * The first search not taken over yet adds its results while the pipeline crawls. The later ones keep them
+     * until {@link #takeOverResults()}, so that messages, their default values and occurrences and the pairs of same
+     * keys and values are the same as when the searches are crawled one after another.
+     */
+    private class SearchResults implements FindResultConsumer {
+        private List<FindResult> kept;
+
+        SearchResults(boolean keep) {
+            kept = keep ? new ArrayList<FindResult>() : null;
+        }
+
+        public void found(FindResult result) {
+            if (kept == null) {
+                addResult(result);
+            } else {
+                kept.add(result);
+            }
+        }
+    }
+
+    public KeyExtractor() {
+        this(1);
+    }
+
+    /**
+     * @param threads the number of files to crawl concurrently.
+     */
+    public KeyExtractor(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads the number of files to crawl concurrently.
+     * @param cache   if not null, results of unchanged files are taken from this cache.
+     */
+    public KeyExtractor(int threads, FindResultCache cache) {
+        this.threads = threads;
+        this.cache = cache;
+    }
+
     public void extractFromFiles(CrawlPattern crawlPattern, String regex, EnumSet<FindRegexAction.Flag> flags) throws IOException {
+        final CrawlPipeline pipeline = createPipeline();
+        extractFromFiles(pipeline, crawlPattern, regex, flags);
+        pipeline.crawl();
+    }
+
+    /**
+     * Adds the extraction to the given pipeline. The results are taken over while the pipeline crawls.
+     * They are added in the order the extractions have been added, as if every extraction was crawled by itself.
+     */
+    public void extractFromFiles(CrawlPipeline pipeline, CrawlPattern crawlPattern, String regex, EnumSet<FindRegexAction.Flag> flags) {
+        extractFromFiles(pipeline, crawlPattern, new FindRegexAction(regex, null, flags, cache));
+    }
+
+    /**
+     * Adds the extraction with the given action to the pipeline. The results are taken over while the pipeline crawls.
+     */
+    public void extractFromFiles(CrawlPipeline pipeline, CrawlPattern crawlPattern, FindRegexAction action) {
         cleanedNegatives = false;
-        FileCrawler crawler = createCrawler(crawlPattern);
-        for (FindResult result : crawler.crawl(new FindRegexAction(regex, null, flags)).getResults()) {
-            final String key = keyOf(result);
-            if (key.length() == 0) {
-                ignoredValues.add(valueOf(result));
-            } else {
-                checkSameKey(result);
-                checkSameValue(result);
-                Message message = messages.get(key);
-                if (message == null) {
-                    message = new Message(key, FOUND, valueOf(result));
+        searches++;
+        action.setConsumer(resultConsumer());
+        action.setSymbols(symbols);
+        pipeline.add(crawlPattern, action);
+    }
+
+    private FindResultConsumer resultConsumer() {
+        final SearchResults results = new SearchResults(!pendingSearches.isEmpty());
+        pendingSearches.add(results);
+        return results;
+    }
+
+    private FindResultConsumer negativeConsumer() {
+        final int search = searches;
+        return new FindResultConsumer() {
+            public void found(FindResult result) {
+                addNegative(search, result);
+            }
+        };
+    }
+
+    /**
+     * A negative replaces the one with the same key unless that comes from a later search,
+     * so the same negatives are kept as when the searches are crawled one after another.
+     */
+    private void addNegative(int search, FindResult result) {
+        final String key = keyOf(result);
+        final Integer previous = negativeSearches.get(key);
+        if (previous == null || previous <= search) {
+            negatives.put(key, result);
+            negativeSearches.put(key, search);
+        }
+    }
+
+    private void removeNegative(String key) {
+        negatives.remove(key);
+        negativeSearches.remove(key);
+    }
+
+    /**
+     * Adds the results kept by the later searches, in the order the searches have been added.
+     */
+    private void takeOverResults() {
+        for (SearchResults search : pendingSearches) {
+            if (search.kept != null) {
+                final List<FindResult> kept = search.kept;
+                search.kept = null;
+                for (FindResult result : kept) {
+                    addResult(result);
                 }
-                message.addOccurrence(result.getPosition());
-                messages.put(key, message);
-                saveResultByLocation(result);
             }
         }
+        pendingSearches.clear();
+    }
+
+    private void addResult(FindResult result) {
+        final String key = keyOf(result);
+        if (key.length() == 0) {
+            ignoredValues.add(valueOf(result));
+        } else {
+            checkSameKey(result);
+            checkSameValue(result);
+            Message message = messages.get(key);
+            if (message == null) {
+                message = new Message(key, FOUND, valueOf(result), languages);
+            }
+            message.addOccurrence(result.getPosition());
+            messages.put(key, message);
+            saveResultByLocation(result);
+        }
     }
 
     private void saveResultByLocation(FindResult result) {
@@ -83,15 +205,67 @@ public class KeyExtractor {
     }
 
     public void extractNegativesFromFiles(CrawlPattern crawlPattern, String regex, String ignoreRegex, EnumSet<FindRegexAction.Flag> flags) throws IOException {
+        final CrawlPipeline pipeline = createPipeline();
+        extractNegativesFromFiles(pipeline, crawlPattern, regex, ignoreRegex, flags);
+        pipeline.crawl();
+    }
+
+    /**
+     * Adds the extraction of negatives to the given pipeline. The results are taken over while the pipeline crawls.
+     * Of negatives with the same text, the one found last by the last extraction is kept.
+     */
+    public void extractNegativesFromFiles(CrawlPipeline pipeline, CrawlPattern crawlPattern, String regex, String ignoreRegex, EnumSet<FindRegexAction.Flag> flags) {
+        extractNegativesFromFiles(pipeline, crawlPattern, new FindRegexAction(regex, ignoreRegex, flags, cache));
+    }
+
+    /**
+     * Adds the extraction of negatives with the given action to the pipeline. The results are taken over while the pipeline crawls.
+     */
+    public void extractNegativesFromFiles(CrawlPipeline pipeline, CrawlPattern crawlPattern, FindRegexAction action) {
         cleanedNegatives = false;
-        FileCrawler crawler = createCrawler(crawlPattern);
-        for (FindResult result : crawler.crawl(new FindRegexAction(regex, ignoreRegex, flags)).getResults()) {
-            negatives.put(keyOf(result), result);
-        }
+        searches++;
+        action.setConsumer(negativeConsumer());
+        action.setSymbols(symbols);
+        pipeline.add(crawlPattern, action);
+    }
+
+    /**
+     * Adds the extraction of messages and negatives by a lexer to the pipeline. The results are taken over while the pipeline crawls.
+     */
+    public void extractFromFiles(CrawlPipeline pipeline, CrawlPattern crawlPattern, TemplateLexerAction action) {
+        cleanedNegatives = false;
+        searches++;
+        action.setConsumer(resultConsumer());
+        action.setNegativeConsumer(negativeConsumer());
+        action.setSymbols(symbols);
+        pipeline.add(crawlPattern, action);
+    }
+
+    /**
+     * Keys, values and texts found or read by this extractor share their instances through this table.
+     * It is cleared once the CSV is written, its statistics are kept.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public FindResultCache getCache() {
+        return cache;
     }
 
-    protected FileCrawler createCrawler(CrawlPattern crawlPattern) {
-        return new FileCrawler(crawlPattern);
+    /**
+     * @see CrawlPipeline#setIoThreads(int)
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    /**
+     * Creates the pipeline of the crawls started by the methods not taking a pipeline.
+     * Subclasses can override it to configure these crawls. It replaces createCrawler(CrawlPattern).
+     */
+    protected CrawlPipeline createPipeline() {
+        return new CrawlPipeline(threads).setIoThreads(ioThreads);
     }
 
     private void checkSameKey(FindResult result) {
@@ -115,21 +289,55 @@ public class KeyExtractor {
     }
 
     public List<FindResultPair> getSameKeyResults() {
+        takeOverResults();
         return sameKeyResults;
     }
 
     public List<FindResultPair> getSameValueResults() {
+        takeOverResults();
         return sameValueResults;
     }
 
     public Collection<FindResult> getNegatives() {
         cleanNegatives();
-        final ArrayList<FindResult> findResults = new ArrayList<FindResult>(negatives.values());
-        Collections.sort(findResults, FIND_RESULT_SORTER);
-        return findResults;
+        return sortedBySourceAndLine(new ArrayList<FindResult>(negatives.values()));
+    }
+
+    /**
+     * The sources are sorted once and replaced by their rank, so the results are sorted by comparing ints.
+     */
+    private static List<FindResult> sortedBySourceAndLine(List<FindResult> results) {
+        final SortedSet<File> sources = new TreeSet<File>();
+        for (FindResult result : results) {
+            sources.add(result.getPosition().getSource());
+        }
+        final Map<File, Integer> ranks = new HashMap<File, Integer>();
+        for (File source : sources) {
+            ranks.put(source, ranks.size());
+        }
+        final long[] keys = new long[results.size()];
+        final Integer[] order = new Integer[results.size()];
+        for (int i = 0; i < keys.length; i++) {
+            final SourcePosition pos = results.get(i).getPosition();
+            keys[i] = ((long) ranks.get(pos.getSource()) << 32) + pos.getLine();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer index1, Integer index2) {
+                final long key1 = keys[index1];
+                final long key2 = keys[index2];
+                return key1 < key2 ? -1 : (key1 == key2 ? 0 : 1);
+            }
+        });
+        final List<FindResult> sorted = new ArrayList<FindResult>(results.size());
+        for (Integer index : order) {
+            sorted.add(results.get(index));
+        }
+        return sorted;
     }
 
     private void cleanNegatives() {
+        takeOverResults();
         if (!cleanedNegatives) {
             cleanedNegatives = true;
             removeInnerNegatives();
@@ -137,35 +345,69 @@ public class KeyExtractor {
         }
     }
 
+    /**
+     * Removes the negatives lying inside of a result of the same file.
+     * Per file, the results and the negatives are sorted by start and swept together,
+     * keeping the largest end of all results starting before the current negative.
+     */
     private void removeInnerNegatives() {
-        for (Iterator<FindResult> iter = negatives.values().iterator(); iter.hasNext(); ) {
-            final FindResult result = iter.next();
-            final SourcePosition pos = result.getPosition();
-            final List<FindResult> sourceResults = resultsByLocation.get(pos.getSource());
-            if (sourceResults != null) {
-                for (FindResult sourceResult : sourceResults) {
-                    if (sourceResult.getPosition().getStart() > pos.getStart()) {
-                        break;
-                    } else if (sourceResult.getPosition().getEnd() >= pos.getEnd()) {
-                        iter.remove();
-                        break;
-                    }
+        final Map<File, List<FindResult>> negativesByLocation = new HashMap<File, List<FindResult>>();
+        for (FindResult negative : negatives.values()) {
+            final File source = negative.getPosition().getSource();
+            if (resultsByLocation.containsKey(source)) {
+                List<FindResult> sourceNegatives = negativesByLocation.get(source);
+                if (sourceNegatives == null) {
+                    sourceNegatives = new ArrayList<FindResult>();
+                    negativesByLocation.put(source, sourceNegatives);
+                }
+                sourceNegatives.add(negative);
+            }
+        }
+        for (Map.Entry<File, List<FindResult>> entry : negativesByLocation.entrySet()) {
+            final long[] intervals = sortedIntervals(resultsByLocation.get(entry.getKey()));
+            final List<FindResult> sourceNegatives = entry.getValue();
+            Collections.sort(sourceNegatives, START_SORTER);
+            int next = 0;
+            long maxEnd = Long.MIN_VALUE;
+            for (FindResult negative : sourceNegatives) {
+                final SourcePosition pos = negative.getPosition();
+                while (next < intervals.length && (int) (intervals[next] >>> 32) <= pos.getStart()) {
+                    maxEnd = Math.max(maxEnd, (int) intervals[next]);
+                    next++;
+                }
+                if (maxEnd >= pos.getEnd()) {
+                    removeNegative(keyOf(negative));
                 }
             }
         }
     }
 
+    /**
+     * @return start and end of the results, packed into longs and sorted by start.
+     */
+    private static long[] sortedIntervals(List<FindResult> results) {
+        final long[] intervals = new long[results.size()];
+        for (int i = 0; i < intervals.length; i++) {
+            final SourcePosition pos = results.get(i).getPosition();
+            intervals[i] = ((long) pos.getStart() << 32) | (pos.getEnd() & 0xffffffffL);
+        }
+        Arrays.sort(intervals);
+        return intervals;
+    }
+
     private void removeIgnoredNegatives() {
         for (String ignored : ignoredValues) {
-            negatives.remove(ignored);
+            removeNegative(ignored);
         }
     }
 
     public SortedMap<String, Message> getMessages() {
+        takeOverResults();
         return messages;
     }
 
     public Set<String> getIgnoredValues() {
+        takeOverResults();
         return ignoredValues;
     }
 
@@ -187,7 +429,8 @@ public class KeyExtractor {
     }
 
     public void extractFromClasspath(List<String> propertyLocations) throws IOException {
-        PropertiesFinder finder = new PropertiesFinder();
+        takeOverResults();
+        PropertiesFinder finder = new PropertiesFinder(languages);
         for (String propertyLocation : propertyLocations) {
             finder.addPropertyLocation(propertyLocation);
         }
@@ -196,18 +439,21 @@ public class KeyExtractor {
 
 
     public void removeNewlines() {
+        takeOverResults();
         for (Map.Entry<String, Message> message : messages.entrySet()) {
-            messages.put(message.getKey(), message.getValue().transformed(new NewlineRemover()));
+            messages.put(message.getKey(), message.getValue().transformed(new NewlineRemover(), symbols));
         }
     }
 
     public void writeCsv(File file, String encoding, char separator) throws IOException {
+        takeOverResults();
         file.getParentFile().mkdirs();
 
-        MessagesWriter writer = new MessagesWriter(encoding, separator);
+        MessagesWriter writer = new MessagesWriter(encoding, separator, symbols, languages);
         writer.write(file, messages);
 
         final OccurrenceWriter occurrenceWriter = new OccurrenceWriter();
         occurrenceWriter.write(file, messages.values());
+        symbols.clear();
     }
 }
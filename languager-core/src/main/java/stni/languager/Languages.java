@@ -0,0 +1,47 @@
+package stni.languager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns every language of a set of messages a dense index, so that {@link Message}s can store their values in arrays
+ * and be read and written positionally. It is owned by whoever creates the messages, like a {@link KeyExtractor},
+ * and lives as long as its messages. Can be shared by several threads.
+ */
+public class Languages {
+    private final Map<String, Integer> indices = new HashMap<String, Integer>();
+    private String[] names = new String[8];
+
+    /**
+     * @return the index of the language, a new one if the language is not yet known.
+     */
+    public synchronized int indexOf(String language) {
+        Integer index = indices.get(language);
+        if (index == null) {
+            index = indices.size();
+            if (index == names.length) {
+                names = Arrays.copyOf(names, 2 * index);
+            }
+            names[index] = language;
+            indices.put(language, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the language, or -1 if it has no index yet.
+     */
+    public synchronized int existingIndexOf(Object language) {
+        final Integer index = indices.get(language);
+        return index == null ? -1 : index;
+    }
+
+    public synchronized String nameOf(int index) {
+        return names[index];
+    }
+
+    public synchronized int size() {
+        return indices.size();
+    }
+}
@@ -1,10 +1,14 @@
 package stni.languager;
 
-import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  *
@@ -37,27 +41,68 @@ public class Message {
         }
     }
 
+    private static final String[] NO_VALUES = new String[0];
+    /**
+     * Marks a language whose value is null, compared by identity.
+     */
+    private static final String NULL_VALUE = new String();
+
     private final String key;
     private final Status status;
     private final String defaultValue;
-    private final Map<String, String> values = new HashMap<String, String>();
-    private final List<SourcePosition> occurrences = new ArrayList<SourcePosition>();
+    private Languages languages;
+    /**
+     * The values indexed by {@link Languages#indexOf(String)}, null if there is no value for a language
+     * and {@link #NULL_VALUE} if the value is null.
+     */
+    private String[] values = NO_VALUES;
+    private final Occurrences occurrences = new Occurrences();
 
+    /**
+     * Creates a message with its own language table, allocated when the first value is added.
+     */
     public Message(String key, Status status, String defaultValue) {
+        this(key, status, defaultValue, null);
+    }
+
+    /**
+     * @param languages the table shared by a set of messages, so that their values can be accessed positionally.
+     */
+    public Message(String key, Status status, String defaultValue, Languages languages) {
         this.key = key;
         this.status = status;
         this.defaultValue = defaultValue;
+        this.languages = languages;
     }
 
     public Message transformed(Transformer transformer) {
-        Message res = new Message(getKey(), getStatus(), transformer.transform("", getDefaultValue()));
-        for (Map.Entry<String, String> value : values.entrySet()) {
-            res.addValue(value.getKey(), transformer.transform(value.getKey(), value.getValue()));
+        return transformed(transformer, null);
+    }
+
+    /**
+     * @param symbols if not null, equal transformed values share one instance.
+     *                The transformed values replace the original ones, so they are not counted as duplicates.
+     */
+    public Message transformed(Transformer transformer, SymbolTable symbols) {
+        Message res = new Message(getKey(), getStatus(), symbol(symbols, transformer.transform("", getDefaultValue())), languages);
+        res.values = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                res.values[i] = stored(symbol(symbols, transformer.transform(languages.nameOf(i), getValue(i))));
+            }
         }
-        res.addOccurrences(getOccurrences());
+        res.addOccurrences(occurrences);
         return res;
     }
 
+    private static String symbol(SymbolTable symbols, String s) {
+        return symbols == null || s == null ? s : symbols.internTransient(s);
+    }
+
+    private static String stored(String value) {
+        return value == null ? NULL_VALUE : value;
+    }
+
     public String getKey() {
         return key;
     }
@@ -70,20 +115,159 @@ public class Message {
         return defaultValue;
     }
 
+    /**
+     * @return the language table the value indices refer to, or null if no value was added yet.
+     */
+    public Languages getLanguages() {
+        return languages;
+    }
+
+    /**
+     * @return a modifiable view of the values by language. Like a HashMap, it keeps null values.
+     */
     public Map<String, String> getValues() {
-        return values;
+        return new AbstractMap<String, String>() {
+            @Override
+            public String get(Object lang) {
+                return valueOf(lang);
+            }
+
+            @Override
+            public boolean containsKey(Object lang) {
+                return languages != null && isPresent(languages.existingIndexOf(lang));
+            }
+
+            @Override
+            public String put(String lang, String value) {
+                final String old = get(lang);
+                addValue(lang, value);
+                return old;
+            }
+
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<Entry<String, String>>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new Iterator<Entry<String, String>>() {
+                            private int next = nextValue(0);
+                            private int last = -1;
+
+                            public boolean hasNext() {
+                                return next < values.length;
+                            }
+
+                            public Entry<String, String> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                last = next;
+                                next = nextValue(next + 1);
+                                return new ValueEntry(last);
+                            }
+
+                            public void remove() {
+                                if (last < 0) {
+                                    throw new IllegalStateException();
+                                }
+                                values[last] = null;
+                                last = -1;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        int size = 0;
+                        for (String value : values) {
+                            if (value != null) {
+                                size++;
+                            }
+                        }
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An entry writing its value through to the message.
+     */
+    private class ValueEntry extends AbstractMap.SimpleEntry<String, String> {
+        private final int index;
+
+        ValueEntry(int index) {
+            super(languages.nameOf(index), Message.this.getValue(index));
+            this.index = index;
+        }
+
+        @Override
+        public String setValue(String value) {
+            Message.this.setValue(index, value);
+            return super.setValue(value);
+        }
+    }
+
+    private String valueOf(Object lang) {
+        return languages == null ? null : getValue(languages.existingIndexOf(lang));
+    }
+
+    private boolean isPresent(int languageIndex) {
+        return languageIndex >= 0 && languageIndex < values.length && values[languageIndex] != null;
+    }
+
+    private int nextValue(int from) {
+        int i = from;
+        while (i < values.length && values[i] == null) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param languageIndex the index given by {@link Languages#indexOf(String)} of the table of this message.
+     * @return the value or null if there is none, also if the index is negative.
+     */
+    public String getValue(int languageIndex) {
+        if (!isPresent(languageIndex)) {
+            return null;
+        }
+        final String value = values[languageIndex];
+        return value == NULL_VALUE ? null : value;
     }
 
     public String getDefaultValueOrLang() {
-        return getDefaultValue() != null ? getDefaultValue() : getValues().get("");
+        return getDefaultValue() != null ? getDefaultValue() : valueOf("");
     }
 
+    /**
+     * @return a modifiable view of the occurrences, creating the positions when they are accessed.
+     */
     public List<SourcePosition> getOccurrences() {
+        return occurrences.asList();
+    }
+
+    public Occurrences getOccurrenceStore() {
         return occurrences;
     }
 
     public void addValue(String lang, String value) {
-        values.put(lang, value);
+        if (languages == null) {
+            languages = new Languages();
+        }
+        setValue(languages.indexOf(lang), value);
+    }
+
+    /**
+     * @param languageIndex the index given by {@link Languages#indexOf(String)} of the table of this message.
+     * @param value           the value, null is kept as a null value like with {@link #addValue(String, String)}.
+     */
+    public void setValue(int languageIndex, String value) {
+        if (languageIndex >= values.length) {
+            values = Arrays.copyOf(values, languageIndex + 1);
+        }
+        values[languageIndex] = stored(value);
     }
 
     public void addOccurrence(SourcePosition occurrence) {
@@ -91,6 +275,12 @@ public class Message {
     }
 
     public void addOccurrences(Collection<SourcePosition> occurrences) {
+        for (SourcePosition occurrence : occurrences) {
+            this.occurrences.add(occurrence);
+        }
+    }
+
+    public void addOccurrences(Occurrences occurrences) {
         this.occurrences.addAll(occurrences);
     }
 
@@ -105,7 +295,12 @@ public class Message {
         if (defaultValue != null ? !defaultValue.equals(message.defaultValue) : message.defaultValue != null)
             return false;
         if (!key.equals(message.key)) return false;
-        if (!values.equals(message.values)) return false;
+        if (languages != message.languages) return getValues().equals(message.getValues());
+        for (int i = 0; i < Math.max(values.length, message.values.length); i++) {
+            if (isPresent(i) != message.isPresent(i)) return false;
+            final String value = getValue(i);
+            if (value != null ? !value.equals(message.getValue(i)) : message.getValue(i) != null) return false;
+        }
 
         return true;
     }
@@ -115,7 +310,7 @@ public class Message {
         int result = key.hashCode();
         result = 31 * result + (status.hashCode());
         result = 31 * result + (defaultValue != null ? defaultValue.hashCode() : 0);
-        result = 31 * result + values.hashCode();
+        result = 31 * result + getValues().hashCode();
         return result;
     }
 
@@ -125,8 +320,8 @@ public class Message {
                 "key='" + key + '\'' +
                 ", status=" + status +
                 ", defaultValue='" + defaultValue + '\'' +
-                ", values=" + values +
-                ", occurrences=" + occurrences +
+                ", values=" + getValues() +
+                ", occurrences=" + getOccurrences() +
                 '}';
     }
 }
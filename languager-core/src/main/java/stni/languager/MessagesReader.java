@@ -14,11 +14,22 @@ public class MessagesReader implements Closeable {
     private final List<String> firstParts;
 
     public MessagesReader(File f, String encoding, char csvSeparator) throws IOException {
-        this(Util.reader(f, encoding), csvSeparator);
+        this(f, encoding, csvSeparator, null);
+    }
+
+    public MessagesReader(File f, String encoding, char csvSeparator, SymbolTable symbols) throws IOException {
+        this(Util.reader(f, encoding), csvSeparator, symbols);
     }
 
     public MessagesReader(Reader reader, char csvSeparator) throws IOException {
-        this.in = new CsvReader(reader, csvSeparator);
+        this(reader, csvSeparator, null);
+    }
+
+    /**
+     * @param symbols if not null, equal keys and values share one instance.
+     */
+    public MessagesReader(Reader reader, char csvSeparator, SymbolTable symbols) throws IOException {
+        this.in = new CsvReader(reader, csvSeparator, symbols);
         firstParts = toLowerCase(in.readLine());
         if (!checkFirstParts()) {
             throw new RuntimeException("The first line of the CSV file must start with '" + MessageIO.MINIMAL_FIRST_LINE + "' but starts with '" + firstParts + "'");
@@ -12,10 +12,29 @@ import static stni.languager.Message.Status.*;
 public class MessagesWriter {
     private final String encoding;
     private final char csvSeparator;
+    private final SymbolTable symbols;
+    private final Languages languages;
 
     public MessagesWriter(String encoding, char csvSeparator) {
+        this(encoding, csvSeparator, null);
+    }
+
+    /**
+     * @param symbols if not null, the keys and values read from an existing file share instances with the found ones.
+     */
+    public MessagesWriter(String encoding, char csvSeparator, SymbolTable symbols) {
+        this(encoding, csvSeparator, symbols, new Languages());
+    }
+
+    /**
+     * @param languages the language table of the messages read from an existing file,
+     *                  best the one of the messages to write, so all values are accessed by the same indices.
+     */
+    public MessagesWriter(String encoding, char csvSeparator, SymbolTable symbols, Languages languages) {
         this.encoding = encoding;
         this.csvSeparator = csvSeparator;
+        this.symbols = symbols;
+        this.languages = languages;
     }
 
     public void write(File f, List<Message> msgs) throws IOException {
@@ -41,7 +60,8 @@ public class MessagesWriter {
     private List<String> readMessages(File f, SortedMap<String, Message> msgs) throws IOException {
         MessagesReader in = null;
         try {
-            in = new MessagesReader(f, encoding, csvSeparator);
+            in = new MessagesReader(f, encoding, csvSeparator, symbols);
+            final int[] langs = languageIndices(in.getFirstParts(), languages, true);
             while (!in.isEndOfInput()) {
                 List<String> line = in.readLine();
                 if (line.size() > 1 || line.get(0).trim().length() > 0) {
@@ -51,13 +71,13 @@ public class MessagesWriter {
                     Message foundMessage = msgs.get(key);
                     Message merged;
                     if (foundMessage == null) {
-                        merged = new Message(key, status == MANUAL ? MANUAL : NOT_FOUND, defaultValue);
+                        merged = new Message(key, status == MANUAL ? MANUAL : NOT_FOUND, defaultValue, languages);
                     } else {
-                        merged = new Message(key, status == MANUAL ? MANUAL : FOUND, foundMessage.getDefaultValue() == null ? defaultValue : foundMessage.getDefaultValue());
-                        merged.addOccurrences(foundMessage.getOccurrences());
+                        merged = new Message(key, status == MANUAL ? MANUAL : FOUND, foundMessage.getDefaultValue() == null ? defaultValue : foundMessage.getDefaultValue(), languages);
+                        merged.addOccurrences(foundMessage.getOccurrenceStore());
                     }
-                    for (int i = MessageIO.FIRST_LANG_COLUMN; i < Math.min(in.getFirstParts().size(), line.size()); i++) {
-                        merged.addValue(in.getFirstParts().get(i), line.get(i));
+                    for (int i = MessageIO.FIRST_LANG_COLUMN; i < Math.min(langs.length, line.size()); i++) {
+                        merged.setValue(langs[i], line.get(i));
                     }
                     msgs.put(key, merged);
                 }
@@ -79,30 +99,49 @@ public class MessagesWriter {
         }
     }
 
-    private void writeLine(CsvWriter out, List<String> langs, Collection<Message> msgs) throws IOException {
+    /**
+     * The column indices are resolved again only when a message has another language table than the one before.
+     */
+    private void writeLine(CsvWriter out, List<String> firstParts, Collection<Message> msgs) throws IOException {
+        Languages table = null;
+        int[] langs = null;
         for (Message msg : msgs) {
+            if (langs == null || msg.getLanguages() != table) {
+                table = msg.getLanguages();
+                langs = languageIndices(firstParts, table, false);
+            }
             out.writeField(msg.getKey());
             out.writeField("" + msg.getStatus().getSymbol());
             out.writeField(simpleOccurrencesOf(msg));
             out.writeField(msg.getDefaultValueOrLang());
-            for (int i = MessageIO.FIRST_LANG_COLUMN; i < langs.size(); i++) {
-                out.writeField(msg.getValues().get(langs.get(i)));
+            for (int i = MessageIO.FIRST_LANG_COLUMN; i < langs.length; i++) {
+                out.writeField(msg.getValue(langs[i]));
             }
             out.writeEndOfLine();
         }
     }
 
+    /**
+     * @param add if languages unknown to the table are added. If not, their index is -1.
+     * @return the language index of each column, so values can be accessed positionally.
+     */
+    private static int[] languageIndices(List<String> firstParts, Languages table, boolean add) {
+        final int[] indices = new int[firstParts.size()];
+        for (int i = MessageIO.FIRST_LANG_COLUMN; i < indices.length; i++) {
+            indices[i] = table == null ? -1 : add ? table.indexOf(firstParts.get(i)) : table.existingIndexOf(firstParts.get(i));
+        }
+        return indices;
+    }
+
     private String simpleOccurrencesOf(Message msg) {
-        boolean first = true;
-        String res = "";
-        for (SourcePosition occ : msg.getOccurrences()) {
-            if (first) {
-                first = false;
-            } else {
-                res += ",";
+        final Occurrences occurrences = msg.getOccurrenceStore();
+        final StringBuilder res = new StringBuilder();
+        for (int i = 0; i < occurrences.size(); i++) {
+            if (i > 0) {
+                res.append(',');
             }
-            res += occ.getSource().getName();
+            res.append(occurrences.getSource(i).getName());
         }
-        return res;
+        return res.toString();
     }
 }
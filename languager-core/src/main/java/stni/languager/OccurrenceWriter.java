@@ -18,8 +18,9 @@ public class OccurrenceWriter {
             writer = new CsvWriter(new OutputStreamWriter(new FileOutputStream(occFile), "utf-8"), ';');
             for (Message message : messages) {
                 writer.writeField(message.getKey());
-                for (SourcePosition occurrence : message.getOccurrences()) {
-                    writer.writeField(occurrence.getSource().getAbsolutePath() + ":[" + occurrence.getLine() + "," + occurrence.getColumn() + "]");
+                final Occurrences occurrences = message.getOccurrenceStore();
+                for (int i = 0; i < occurrences.size(); i++) {
+                    writer.writeField(occurrences.getSource(i).getAbsolutePath() + ":[" + occurrences.getLine(i) + "," + occurrences.getColumn(i) + "]");
                 }
                 writer.writeEndOfLine();
             }
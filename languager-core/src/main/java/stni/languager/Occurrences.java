@@ -0,0 +1,252 @@
+package stni.languager;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores source positions as ints instead of as objects.
+ * The sources are kept in a dictionary and referenced by id, as most occurrences share a few files.
+ * Most keys occur only once or twice, so the first occurrence is kept in fields
+ * and arrays are only allocated for further occurrences and files.
+ */
+public class Occurrences {
+    /**
+     * Ints per further occurrence: file id, start, end, line and column.
+     */
+    private static final int STRIDE = 5;
+    private static final int MAP_THRESHOLD = 16;
+    private static final int OBJECT_SIZE = 56;
+    private static final int ARRAY_HEADER = 16;
+
+    private File firstFile;
+    private int firstStart;
+    private int firstEnd;
+    private int firstLine;
+    private int firstColumn;
+    private int[] more;
+    private File[] otherFiles;
+    private int fileCount;
+    private Map<File, Integer> fileIds;
+    private int size;
+
+    public void add(SourcePosition position) {
+        add(fileId(position.getSource()), position.getStart(), position.getEnd(), position.getLine(), position.getColumn());
+    }
+
+    public void addAll(Occurrences occurrences) {
+        for (int i = 0; i < occurrences.size; i++) {
+            add(fileId(occurrences.getSource(i)), occurrences.getStart(i), occurrences.getEnd(i),
+                    occurrences.getLine(i), occurrences.getColumn(i));
+        }
+    }
+
+    private void add(int fileId, int start, int end, int line, int column) {
+        if (size == 0) {
+            firstStart = start;
+            firstEnd = end;
+            firstLine = line;
+            firstColumn = column;
+        } else {
+            final int pos = (size - 1) * STRIDE;
+            if (more == null) {
+                more = new int[STRIDE];
+            } else if (pos == more.length) {
+                more = Arrays.copyOf(more, 2 * more.length);
+            }
+            more[pos] = fileId;
+            more[pos + 1] = start;
+            more[pos + 2] = end;
+            more[pos + 3] = line;
+            more[pos + 4] = column;
+        }
+        size++;
+    }
+
+    /**
+     * Replaces the occurrences from index from to index to by the given one, if any.
+     * The following occurrences are added again, which is fine as changes other than appending are rare.
+     */
+    private void replace(int from, int to, SourcePosition position) {
+        final List<SourcePosition> following = new ArrayList<SourcePosition>(size - to);
+        for (int i = to; i < size; i++) {
+            following.add(get(i));
+        }
+        size = from;
+        if (size == 0) {
+            firstFile = null;
+            otherFiles = null;
+            fileCount = 0;
+            fileIds = null;
+        }
+        if (position != null) {
+            add(position);
+        }
+        for (SourcePosition p : following) {
+            add(p);
+        }
+    }
+
+    /**
+     * Occurrences mostly come file by file, so the file of the last occurrence is tried first.
+     */
+    private int fileId(File file) {
+        if (size > 0 && sameFile(getSource(size - 1), file)) {
+            return fileIdOf(size - 1);
+        }
+        if (fileIds != null) {
+            final Integer id = fileIds.get(file);
+            if (id != null) {
+                return id;
+            }
+        } else {
+            for (int i = 0; i < fileCount; i++) {
+                if (sameFile(fileOfId(i), file)) {
+                    return i;
+                }
+            }
+        }
+        if (fileCount == 0) {
+            firstFile = file;
+        } else {
+            if (otherFiles == null) {
+                otherFiles = new File[1];
+            } else if (fileCount - 1 == otherFiles.length) {
+                otherFiles = Arrays.copyOf(otherFiles, 2 * otherFiles.length);
+            }
+            otherFiles[fileCount - 1] = file;
+        }
+        if (fileIds != null) {
+            fileIds.put(file, fileCount);
+        } else if (fileCount == MAP_THRESHOLD) {
+            fileIds = new HashMap<File, Integer>();
+            for (int i = 0; i <= fileCount; i++) {
+                fileIds.put(fileOfId(i), i);
+            }
+        }
+        return fileCount++;
+    }
+
+    private static boolean sameFile(File a, File b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    private int fileIdOf(int index) {
+        return index == 0 ? 0 : more[(index - 1) * STRIDE];
+    }
+
+    private File fileOfId(int id) {
+        return id == 0 ? firstFile : otherFiles[id - 1];
+    }
+
+    private int field(int index, int offset) {
+        return more[(index - 1) * STRIDE + offset];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public File getSource(int index) {
+        return fileOfId(fileIdOf(index));
+    }
+
+    public int getStart(int index) {
+        return index == 0 ? firstStart : field(index, 1);
+    }
+
+    public int getEnd(int index) {
+        return index == 0 ? firstEnd : field(index, 2);
+    }
+
+    public int getLine(int index) {
+        return index == 0 ? firstLine : field(index, 3);
+    }
+
+    public int getColumn(int index) {
+        return index == 0 ? firstColumn : field(index, 4);
+    }
+
+    public SourcePosition get(int index) {
+        return new SourcePosition(getSource(index), getStart(index), getEnd(index), getLine(index), getColumn(index));
+    }
+
+    /**
+     * @return an estimate of the memory used by this object and its arrays, assuming compressed references.
+     * The map of file ids of occurrences in many files is not counted.
+     */
+    long getFootprint() {
+        long bytes = OBJECT_SIZE;
+        if (more != null) {
+            bytes += aligned(ARRAY_HEADER + 4L * more.length);
+        }
+        if (otherFiles != null) {
+            bytes += aligned(ARRAY_HEADER + 4L * otherFiles.length);
+        }
+        return bytes;
+    }
+
+    private static long aligned(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @return a modifiable view, creating the positions when they are accessed.
+     */
+    public List<SourcePosition> asList() {
+        return new AbstractList<SourcePosition>() {
+            @Override
+            public SourcePosition get(int index) {
+                checkIndex(index, size - 1);
+                return Occurrences.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void add(int index, SourcePosition position) {
+                checkIndex(index, size);
+                modCount++;
+                if (index == size) {
+                    Occurrences.this.add(position);
+                } else {
+                    replace(index, index, position);
+                }
+            }
+
+            @Override
+            public SourcePosition set(int index, SourcePosition position) {
+                final SourcePosition old = get(index);
+                replace(index, index + 1, position);
+                return old;
+            }
+
+            @Override
+            public SourcePosition remove(int index) {
+                final SourcePosition old = get(index);
+                modCount++;
+                replace(index, index + 1, null);
+                return old;
+            }
+
+            @Override
+            protected void removeRange(int from, int to) {
+                modCount++;
+                replace(from, to, null);
+            }
+        };
+    }
+
+    private static void checkIndex(int index, int max) {
+        if (index < 0 || index > max) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Max: " + max);
+        }
+    }
+}
@@ -18,6 +18,18 @@ import static stni.languager.Message.Status.FOUND;
 public class PropertiesFinder {
     public static final String PROPERTIES = ".properties";
     private List<String> propertyLocations = new ArrayList<String>();
+    private final Languages languages;
+
+    public PropertiesFinder() {
+        this(new Languages());
+    }
+
+    /**
+     * @param languages the language table of the found messages.
+     */
+    public PropertiesFinder(Languages languages) {
+        this.languages = languages;
+    }
 
     public void addPropertyLocation(String location) {
         propertyLocations.add(location);
@@ -42,7 +54,7 @@ public class PropertiesFinder {
                 for (String name : props.stringPropertyNames()) {
                     Message message = messages.get(name);
                     if (message == null) {
-                        message = new Message(name, FOUND, null);
+                        message = new Message(name, FOUND, null, languages);
                         messages.put(name, message);
                     }
                     message.addValue(lang, props.getProperty(name));
@@ -0,0 +1,120 @@
+package stni.languager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one instance of equal strings, so keys, values and paths found many times are stored only once.
+ * Can be shared by several threads.
+ */
+public class SymbolTable {
+    /**
+     * Object header, fields and array header of a String, without its chars.
+     */
+    private static final int STRING_OVERHEAD = 40;
+    /**
+     * Node of a ConcurrentHashMap and its share of the table.
+     */
+    private static final int ENTRY_OVERHEAD = 40;
+
+    private final ConcurrentMap<String, String> symbols = new ConcurrentHashMap<String, String>();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong duplicateChars = new AtomicLong();
+    private final AtomicLong duplicateBytes = new AtomicLong();
+
+    /**
+     * @return the instance equal to s that was given first, or null if s is null.
+     */
+    public String intern(String s) {
+        return intern(s, true);
+    }
+
+    /**
+     * Like {@link #intern(String)}, but does not count s as a duplicate.
+     * For strings that are created only to be looked up and would not be retained anyway.
+     */
+    public String internTransient(String s) {
+        return intern(s, false);
+    }
+
+    private String intern(String s, boolean count) {
+        if (s == null) {
+            return null;
+        }
+        final String symbol = symbols.putIfAbsent(s, s);
+        if (symbol == null) {
+            entries.incrementAndGet();
+            return s;
+        }
+        if (count && symbol != s) {
+            duplicates.incrementAndGet();
+            duplicateChars.addAndGet(s.length());
+            duplicateBytes.addAndGet(bytes(s));
+        }
+        return symbol;
+    }
+
+    /**
+     * @return the size of the chars of s in a compact string: 1 byte per char if all chars are Latin-1, else 2.
+     */
+    private static int bytes(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xff) {
+                return 2 * s.length();
+            }
+        }
+        return s.length();
+    }
+
+    /**
+     * @return a result with interned findings.
+     */
+    public FindResult internFindings(FindResult result) {
+        final List<String> findings = new ArrayList<String>(result.getFindings().size());
+        for (String finding : result.getFindings()) {
+            findings.add(intern(finding));
+        }
+        return new FindResult(result.getPosition(), findings);
+    }
+
+    public int getSize() {
+        return symbols.size();
+    }
+
+    /**
+     * @return the number of entries added to the table, also those removed by {@link #clear()}.
+     */
+    public long getEntries() {
+        return entries.get();
+    }
+
+    /**
+     * Drops the instances so they can be collected, keeping the statistics.
+     */
+    public void clear() {
+        symbols.clear();
+    }
+
+    /**
+     * @return the number of strings that were replaced by an equal instance.
+     */
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getDuplicateChars() {
+        return duplicateChars.get();
+    }
+
+    /**
+     * @return an estimate of the memory saved by replacing duplicates, assuming compact strings,
+     * less the memory used by the entries of the table. Negative if few strings are duplicates.
+     */
+    public long getSavedBytes() {
+        return STRING_OVERHEAD * getDuplicates() + duplicateBytes.get() - ENTRY_OVERHEAD * getEntries();
+    }
+}
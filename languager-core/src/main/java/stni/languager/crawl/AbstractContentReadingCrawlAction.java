@@ -1,53 +1,198 @@
 package stni.languager.crawl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  *
  */
 public abstract class AbstractContentReadingCrawlAction implements CrawlAction {
-
-    private Integer[] newlines;
+    private int[] newlines = new int[16];
+    private int newlineCount;
+    private long windowOffset;
+    private int linesBefore;
+    private long lastNewlineBefore;
+    private long matches;
 
     public void action(File basedir, File file, CrawlPattern pattern) throws IOException {
-        InputStreamReader in = null;
-        try {
-            in = new InputStreamReader(new FileInputStream(file), pattern.getEncoding());
-            char[] ch = new char[(int) file.length()];
-            int read = in.read(ch);
-            String s = new String(ch, 0, read);
-            findNewlines(s);
-            doAction(basedir, file, s, pattern);
-        } finally {
-            Util.closeSilently(in);
+        if (skipsUnsuitableFiles() && file.length() > pattern.getMaxFileSize()) {
+            return;
+        }
+        final ContentReader reader = ContentReader.forCurrentThread();
+        final boolean windows = readsInWindows(file, pattern);
+        if (skipsUnsuitableFiles() && (windows || usesCache()) && reader.looksBinary(file, pattern.getEncoding())) {
+            return;
+        }
+        if (!needsContent(basedir, file, pattern)) {
+            return;
+        }
+        if (windows) {
+            if (acceptsMapped(file, pattern)) {
+                actionInWindows(basedir, file, pattern);
+            }
+            return;
         }
+        final ByteBuffer bytes = reader.readBytes(file);
+        if ((!skipsUnsuitableFiles() || !reader.looksBinary(bytes, pattern.getEncoding())) && acceptsBytes(file, bytes.duplicate(), pattern)) {
+            action(basedir, file, reader.decode(bytes, pattern.getEncoding()), pattern);
+        }
+    }
+
+    /**
+     * Works on already read content, so that {@link CrawlPipeline} can read a file only once for several actions.
+     */
+    void action(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        resetLines();
+        findNewlines(content);
+        doAction(basedir, file, content, pattern);
+    }
+
+    /**
+     * @return if this is a {@link WindowedCrawlAction} and the file is large enough to be given to it in windows
+     * instead of reading it at once.
+     */
+    boolean readsInWindows(File file, CrawlPattern pattern) {
+        return readsInWindows(file.length(), pattern);
+    }
+
+    private boolean readsInWindows(long size, CrawlPattern pattern) {
+        return this instanceof WindowedCrawlAction && ((WindowedCrawlAction) this).supportsWindows()
+                && size >= pattern.getWindowThreshold();
+    }
+
+    /**
+     * Decides without side effects if the file will probably be read at once, so that it is worth reading it ahead.
+     * Files that are too large, read in windows or whose results are still valid are not.
+     */
+    boolean mayReadAtOnce(File file, long size, CrawlPattern pattern) throws IOException {
+        return !(skipsUnsuitableFiles() && size > pattern.getMaxFileSize()) && !readsInWindows(size, pattern)
+                && mayNeedContent(file, pattern);
+    }
+
+    /**
+     * Gives a file that is read in windows to {@link #acceptsBytes} as a memory mapped buffer, so it is prefiltered like other files.
+     * Files too large to be mapped at once are always accepted.
+     */
+    boolean acceptsMapped(File file, CrawlPattern pattern) throws IOException {
+        final ByteBuffer bytes = ContentReader.mapBytes(file);
+        return bytes == null || acceptsBytes(file, bytes, pattern);
+    }
+
+    void actionInWindows(final File basedir, final File file, final CrawlPattern pattern) throws IOException {
+        resetLines();
+        final WindowedCrawlAction windowed = (WindowedCrawlAction) this;
+        ContentReader.forCurrentThread().readWindows(file, pattern.getEncoding(), pattern.getWindowSize(), pattern.getMaxMatchLength(),
+                new ContentReader.WindowConsumer() {
+                    public void window(CharSequence window, long offset, boolean last) throws IOException {
+                        moveWindow(offset);
+                        findNewlines(window);
+                        windowed.doWindow(basedir, file, window, offset, last, pattern);
+                    }
+                });
+    }
+
+    /**
+     * Called before the file is read, but after unsuitable files have been skipped.
+     * If it returns false, the file is neither read nor given to {@link #doAction}.
+     */
+    protected boolean needsContent(File basedir, File file, CrawlPattern pattern) throws IOException {
+        return true;
     }
 
-    protected abstract void doAction(File basedir, File file, String content, CrawlPattern pattern) throws IOException;
+    /**
+     * Like {@link #needsContent}, but without side effects, as it may be called from another thread before the file is crawled.
+     *
+     * @return false if {@link #needsContent} will surely return false.
+     */
+    protected boolean mayNeedContent(File file, CrawlPattern pattern) throws IOException {
+        return true;
+    }
+
+    /**
+     * Called with the undecoded bytes of the file. If it returns false, the file is neither decoded nor given to {@link #doAction}.
+     */
+    protected boolean acceptsBytes(File file, ByteBuffer bytes, CrawlPattern pattern) throws IOException {
+        return true;
+    }
+
+    /**
+     * @return if {@link #needsContent} may take the results from a cache instead of the content.
+     * Then files are checked for looking binary before, by reading their head, as their content may never be read.
+     */
+    protected boolean usesCache() {
+        return false;
+    }
+
+    /**
+     * @return if files that look binary or are larger than {@link CrawlPattern#getMaxFileSize()} should be skipped.
+     */
+    protected boolean skipsUnsuitableFiles() {
+        return false;
+    }
+
+    /**
+     * @param content The content of the file. It is only valid during this call and must not be kept.
+     */
+    protected abstract void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException;
+
+    /**
+     * Counts a match for the {@link CrawlProfile}.
+     */
+    protected void countMatch() {
+        matches++;
+    }
 
-    protected void findNewlines(String content) {
-        List<Integer> newlineList = new ArrayList<Integer>();
+    long getMatches() {
+        return matches;
+    }
+
+    protected void findNewlines(CharSequence content) {
+        newlineCount = 0;
         for (int i = 0; i < content.length(); i++) {
             if (content.charAt(i) == '\n') {
-                newlineList.add(i);
+                if (newlineCount == newlines.length) {
+                    newlines = Arrays.copyOf(newlines, 2 * newlines.length);
+                }
+                newlines[newlineCount++] = i;
             }
         }
-        newlines = newlineList.toArray(new Integer[newlineList.size()]);
+    }
+
+    private void resetLines() {
+        newlineCount = 0;
+        windowOffset = 0;
+        linesBefore = 0;
+        lastNewlineBefore = 0;
+    }
+
+    private void moveWindow(long offset) {
+        final long advance = offset - windowOffset;
+        for (int i = 0; i < newlineCount && newlines[i] < advance; i++) {
+            linesBefore++;
+            lastNewlineBefore = windowOffset + newlines[i];
+        }
+        windowOffset = offset;
     }
 
     protected int lineOfPosition(int pos) {
-        return -Arrays.binarySearch(newlines, pos);
+        return linesBefore - Arrays.binarySearch(newlines, 0, newlineCount, pos);
     }
 
     protected int columnOfPosition(int pos) {
-        final int line = lineOfPosition(pos);
-        return line == 1 ? pos : pos - newlines[line - 2];
+        final int line = -Arrays.binarySearch(newlines, 0, newlineCount, pos);
+        if (line != 1) {
+            return pos - newlines[line - 2];
+        }
+        return saturated(linesBefore == 0 ? windowOffset + pos : windowOffset + pos - lastNewlineBefore);
+    }
+
+    /**
+     * Positions in files with more than 2^31 chars cannot be represented in a {@link stni.languager.SourcePosition}.
+     */
+    protected static int saturated(long pos) {
+        return (int) Math.min(Integer.MAX_VALUE, pos);
     }
 
     protected File target(File source, File sourceBaseDir, File targetDir) {
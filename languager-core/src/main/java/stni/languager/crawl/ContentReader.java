@@ -0,0 +1,270 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and decodes the content of files without intermediate copies.
+ * Large files are memory mapped, smaller ones are read into a buffer that is reused.
+ * Decoders and buffers are kept per thread, so the returned content is only valid
+ * until the next file is read by the same thread.
+ */
+class ContentReader {
+    interface WindowConsumer {
+        /**
+         * @param window The content of the window. It is only valid during this call.
+         * @param offset The position of the window start in the file (in chars).
+         * @param last   If this is the last window of the file.
+         */
+        void window(CharSequence window, long offset, boolean last) throws IOException;
+    }
+
+    private static final int MAP_THRESHOLD = 1024 * 1024;
+    private static final int INITIAL_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int BINARY_CHECK_SIZE = 4 * 1024;
+
+    private static final ThreadLocal<ContentReader> READERS = new ThreadLocal<ContentReader>() {
+        @Override
+        protected ContentReader initialValue() {
+            return new ContentReader();
+        }
+    };
+
+    private final Map<String, CharsetDecoder> decoders = new HashMap<String, CharsetDecoder>();
+    private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_SIZE);
+    private CharBuffer chars = CharBuffer.allocate(INITIAL_SIZE);
+
+    static ContentReader forCurrentThread() {
+        return READERS.get();
+    }
+
+    ByteBuffer readBytes(File file) throws IOException {
+        return readBytes(file, this);
+    }
+
+    /**
+     * Reads the file into a new buffer, which stays valid when the thread reads other files.
+     * Needs no reader of the current thread, so it is cheap on short lived threads.
+     */
+    static ByteBuffer readNewBytes(File file) throws IOException {
+        return readBytes(file, null);
+    }
+
+    /**
+     * Maps the whole file into memory, without copying it.
+     *
+     * @return the mapped file or null if it is too large to be mapped at once.
+     */
+    static ByteBuffer mapBytes(File file) throws IOException {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            return size > Integer.MAX_VALUE ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            Util.closeSilently(in);
+        }
+    }
+
+    private static ByteBuffer readBytes(File file, ContentReader reuse) throws IOException {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file + " is too large to be read at once");
+            }
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            final ByteBuffer buffer;
+            if (reuse != null) {
+                reuse.bytes = ensureCapacity(reuse.bytes, (int) size);
+                buffer = reuse.bytes;
+            } else {
+                buffer = ByteBuffer.allocate((int) size);
+            }
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                //read until buffer is full or end of file is reached
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            Util.closeSilently(in);
+        }
+    }
+
+    CharSequence decode(ByteBuffer in, String encoding) throws IOException {
+        final CharsetDecoder decoder = decoder(encoding);
+        chars = ensureCapacity(chars, (int) Math.ceil(in.remaining() * (double) decoder.averageCharsPerByte()));
+        decoder.reset();
+        CoderResult result;
+        do {
+            result = decoder.decode(in, chars, true);
+            if (result.isOverflow()) {
+                chars = grow(chars);
+            }
+        } while (result.isOverflow());
+        checkResult(result);
+        do {
+            result = decoder.flush(chars);
+            if (result.isOverflow()) {
+                chars = grow(chars);
+            }
+        } while (result.isOverflow());
+        checkResult(result);
+        chars.flip();
+        return chars;
+    }
+
+    /**
+     * Streams the file in windows of the given size, each overlapping the previous by overlap chars.
+     * Works for files of any size, as neither the whole file nor its content is held in memory.
+     */
+    void readWindows(File file, String encoding, int windowSize, int overlap, WindowConsumer consumer) throws IOException {
+        final CharsetDecoder decoder = decoder(encoding);
+        decoder.reset();
+        final ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+        in.flip();
+        final CharBuffer window = CharBuffer.allocate(windowSize);
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            final FileChannel channel = stream.getChannel();
+            long offset = 0;
+            boolean endOfInput = false;
+            boolean flushed = false;
+            while (true) {
+                while (window.hasRemaining() && !flushed) {
+                    CoderResult result;
+                    if (endOfInput && !in.hasRemaining()) {
+                        result = decoder.flush(window);
+                        flushed = result.isUnderflow();
+                    } else {
+                        if (!endOfInput) {
+                            in.compact();
+                            endOfInput = channel.read(in) < 0;
+                            in.flip();
+                        }
+                        result = decoder.decode(in, window, endOfInput);
+                    }
+                    checkResult(result);
+                    if (result.isOverflow()) {
+                        break;
+                    }
+                }
+                window.flip();
+                consumer.window(window, offset, flushed);
+                if (flushed) {
+                    return;
+                }
+                final int keep = Math.min(overlap, window.limit());
+                offset += window.limit() - keep;
+                window.position(window.limit() - keep);
+                window.compact();
+            }
+        } finally {
+            Util.closeSilently(stream);
+        }
+    }
+
+    /**
+     * Checks the first few KB of the file for NUL bytes, in encodings representing ASCII as single bytes.
+     * Byte sequences that are invalid in the encoding do not make a file binary, as text files with a slightly
+     * wrong encoding are still worth searching. They are decoded with replacement characters.
+     * The position of the buffer is not changed.
+     */
+    boolean looksBinary(ByteBuffer bytes, String encoding) throws IOException {
+        if ("\n".getBytes(decoder(encoding).charset()).length != 1) {
+            return false;
+        }
+        final int end = Math.min(bytes.limit(), bytes.position() + BINARY_CHECK_SIZE);
+        for (int i = bytes.position(); i < end; i++) {
+            if (bytes.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like {@link #looksBinary(ByteBuffer, String)}, but reads only the head of the file.
+     */
+    boolean looksBinary(File file, String encoding) throws IOException {
+        //one more byte tells if the head is the complete file
+        final ByteBuffer head = ByteBuffer.allocate(BINARY_CHECK_SIZE + 1);
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final FileChannel channel = in.getChannel();
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                //read until buffer is full or end of file is reached
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+        head.flip();
+        return looksBinary(head, encoding);
+    }
+
+    private void checkResult(CoderResult result) throws CharacterCodingException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    private CharsetDecoder decoder(String encoding) throws UnsupportedEncodingException {
+        CharsetDecoder decoder = decoders.get(encoding);
+        if (decoder == null) {
+            try {
+                decoder = Charset.forName(encoding).newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            } catch (IllegalArgumentException e) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+            decoders.put(encoding, decoder);
+        }
+        return decoder;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+        if (buffer.capacity() < size || (buffer.capacity() > MAX_RETAINED_SIZE && buffer.capacity() > 2 * size)) {
+            return ByteBuffer.allocate(Math.max(size, INITIAL_SIZE));
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    private static CharBuffer ensureCapacity(CharBuffer buffer, int size) {
+        if (buffer.capacity() < size || (buffer.capacity() > MAX_RETAINED_SIZE && buffer.capacity() > 2 * size)) {
+            return CharBuffer.allocate(Math.max(size, INITIAL_SIZE));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static CharBuffer grow(CharBuffer buffer) {
+        final CharBuffer grown = CharBuffer.allocate(2 * buffer.capacity());
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -7,11 +7,19 @@ import java.io.File;
  */
 public class CrawlPattern {
     private static final String DEFAULT_ENCODING = "utf-8";
+    private static final long DEFAULT_WINDOW_THRESHOLD = 64 * 1024 * 1024;
+    private static final int DEFAULT_MAX_MATCH_LENGTH = 64 * 1024;
+    private static final int WINDOW_SIZE_PER_OVERLAP = 64;
+    private static final long DEFAULT_MATCH_STEP_BUDGET = 1000L * 1000 * 1000;
 
     private final File basedir;
     private final String includes;
     private final String excludes;
     private final String encoding;
+    private long windowThreshold = DEFAULT_WINDOW_THRESHOLD;
+    private int maxMatchLength = DEFAULT_MAX_MATCH_LENGTH;
+    private long maxFileSize = Long.MAX_VALUE;
+    private long matchStepBudget = DEFAULT_MATCH_STEP_BUDGET;
 
     public CrawlPattern(File basedir, String includes, String excludes, String encoding) {
         this.basedir = basedir;
@@ -36,4 +44,63 @@ public class CrawlPattern {
         return encoding;
     }
 
+    /**
+     * Files of at least this size (in bytes) are scanned in overlapping windows instead of being read at once,
+     * if the action supports it.
+     */
+    public long getWindowThreshold() {
+        return windowThreshold;
+    }
+
+    public void setWindowThreshold(long windowThreshold) {
+        this.windowThreshold = windowThreshold;
+    }
+
+    /**
+     * The maximum length (in chars) of a match when scanning in windows. Windows overlap by this length,
+     * so longer matches can be missed.
+     */
+    public int getMaxMatchLength() {
+        return maxMatchLength;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the length is not positive or a window of this overlap would not fit in an int.
+     */
+    public void setMaxMatchLength(int maxMatchLength) {
+        if (maxMatchLength <= 0 || maxMatchLength > Integer.MAX_VALUE / WINDOW_SIZE_PER_OVERLAP) {
+            throw new IllegalArgumentException("maxMatchLength must be between 1 and " + Integer.MAX_VALUE / WINDOW_SIZE_PER_OVERLAP
+                    + " but is " + maxMatchLength);
+        }
+        this.maxMatchLength = maxMatchLength;
+    }
+
+    /**
+     * The size (in chars) of the windows large files are scanned in.
+     */
+    public int getWindowSize() {
+        return WINDOW_SIZE_PER_OVERLAP * maxMatchLength;
+    }
+
+    /**
+     * Larger files (in bytes) are skipped by actions that only search files, like {@link FindRegexAction}.
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * The number of character accesses a regex may need to find one match, before the crawl is aborted.
+     */
+    public long getMatchStepBudget() {
+        return matchStepBudget;
+    }
+
+    public void setMatchStepBudget(long matchStepBudget) {
+        this.matchStepBudget = matchStepBudget;
+    }
 }
@@ -0,0 +1,260 @@
+package stni.languager.crawl;
+
+import java.io.File;
+
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Decides which files of a {@link CrawlPattern} are crawled,
+ * with the same semantics as plexus' DirectoryScanner used by FileUtils.getFiles.
+ * The include and exclude patterns are split into path segments once,
+ * paths are given as arrays of their segments, relative to the basedir.
+ * Besides single files, whole directories can be checked, so that subtrees without any included file are not walked.
+ */
+class CrawlPatternMatcher {
+    private static final String ANY_DIRS = "**";
+
+    private static class Segment {
+        private final String pattern;
+        private final boolean anyDirs;
+        private final boolean literal;
+
+        Segment(String pattern) {
+            this.pattern = pattern;
+            anyDirs = ANY_DIRS.equals(pattern);
+            literal = pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0;
+        }
+
+        boolean matches(String s) {
+            return literal ? pattern.equals(s) : wildcardMatch(pattern, s);
+        }
+    }
+
+    private static class PathPattern {
+        private final boolean absolute;
+        private final Segment[] segments;
+
+        PathPattern(String pattern) {
+            absolute = pattern.startsWith(File.separator);
+            final String[] parts = StringUtils.split(pattern, File.separator);
+            segments = new Segment[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                segments[i] = new Segment(parts[i]);
+            }
+        }
+
+        boolean endsWithAnyDirs() {
+            return segments.length > 0 && segments[segments.length - 1].anyDirs;
+        }
+    }
+
+    private final PathPattern[] includes;
+    private final PathPattern[] excludes;
+    private final PathPattern[] subtreeExcludes;
+
+    CrawlPatternMatcher(CrawlPattern pattern) {
+        includes = pattern.getIncludes() == null ? compile(new String[]{ANY_DIRS}) : compile(normalize(pattern.getIncludes()));
+        excludes = pattern.getExcludes() == null ? new PathPattern[0] : compile(normalize(pattern.getExcludes()));
+        int count = 0;
+        for (PathPattern exclude : excludes) {
+            if (exclude.endsWithAnyDirs()) {
+                count++;
+            }
+        }
+        subtreeExcludes = new PathPattern[count];
+        count = 0;
+        for (PathPattern exclude : excludes) {
+            if (exclude.endsWithAnyDirs()) {
+                subtreeExcludes[count++] = exclude;
+            }
+        }
+    }
+
+    private static String[] normalize(String patterns) {
+        final String[] res = StringUtils.split(patterns, ",");
+        for (int i = 0; i < res.length; i++) {
+            String s = res[i].trim().replace('/', File.separatorChar).replace('\\', File.separatorChar);
+            if (s.endsWith(File.separator)) {
+                s += ANY_DIRS;
+            }
+            res[i] = s;
+        }
+        return res;
+    }
+
+    private static PathPattern[] compile(String[] patterns) {
+        final PathPattern[] res = new PathPattern[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            res[i] = new PathPattern(patterns[i]);
+        }
+        return res;
+    }
+
+    /**
+     * @param path the segments of a file path, only the first len are used.
+     */
+    boolean isIncluded(String[] path, int len) {
+        return matchesAny(includes, path, len) && !matchesAny(excludes, path, len);
+    }
+
+    /**
+     * @param dir the segments of a directory path, only the first len are used.
+     * @return if the directory could contain included files.
+     * A directory cannot contain included files if no include pattern can match anything below it,
+     * or if an exclude pattern ending with '**' matches the directory, as this excludes everything below it.
+     */
+    boolean couldHoldIncluded(String[] dir, int len) {
+        boolean couldHold = false;
+        for (PathPattern include : includes) {
+            if (matchStart(include, dir, len)) {
+                couldHold = true;
+                break;
+            }
+        }
+        return couldHold && !matchesAny(subtreeExcludes, dir, len);
+    }
+
+    private static boolean matchesAny(PathPattern[] patterns, String[] path, int len) {
+        for (PathPattern pattern : patterns) {
+            if (match(pattern, path, len)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same as SelectorUtils.matchPatternStart: If the pattern could match a path starting with the given path.
+     */
+    private static boolean matchStart(PathPattern pattern, String[] path, int len) {
+        if (pattern.absolute) {
+            return false;
+        }
+        final Segment[] segs = pattern.segments;
+        int patStart = 0;
+        int strStart = 0;
+        while (patStart < segs.length && strStart < len) {
+            if (segs[patStart].anyDirs) {
+                return true;
+            }
+            if (!segs[patStart].matches(path[strStart])) {
+                return false;
+            }
+            patStart++;
+            strStart++;
+        }
+        return strStart >= len || patStart < segs.length;
+    }
+
+    /**
+     * Same as SelectorUtils.matchPath.
+     */
+    private static boolean match(PathPattern pattern, String[] path, int len) {
+        if (pattern.absolute) {
+            return false;
+        }
+        final Segment[] segs = pattern.segments;
+        int patStart = 0;
+        int patEnd = segs.length - 1;
+        int strStart = 0;
+        int strEnd = len - 1;
+
+        //up to the first '**'
+        while (patStart <= patEnd && strStart <= strEnd && !segs[patStart].anyDirs) {
+            if (!segs[patStart].matches(path[strStart])) {
+                return false;
+            }
+            patStart++;
+            strStart++;
+        }
+        if (strStart > strEnd) {
+            return onlyAnyDirs(segs, patStart, patEnd);
+        }
+        if (patStart > patEnd) {
+            return false;
+        }
+
+        //up to the last '**'
+        while (patStart <= patEnd && strStart <= strEnd && !segs[patEnd].anyDirs) {
+            if (!segs[patEnd].matches(path[strEnd])) {
+                return false;
+            }
+            patEnd--;
+            strEnd--;
+        }
+        if (strStart > strEnd) {
+            return onlyAnyDirs(segs, patStart, patEnd);
+        }
+
+        //the parts between '**'s
+        while (patStart != patEnd && strStart <= strEnd) {
+            int patTmp = -1;
+            for (int i = patStart + 1; i <= patEnd; i++) {
+                if (segs[i].anyDirs) {
+                    patTmp = i;
+                    break;
+                }
+            }
+            if (patTmp == patStart + 1) {
+                patStart++;
+                continue;
+            }
+            final int patLength = patTmp - patStart - 1;
+            final int strLength = strEnd - strStart + 1;
+            int found = -1;
+            strLoop:
+            for (int i = 0; i <= strLength - patLength; i++) {
+                for (int j = 0; j < patLength; j++) {
+                    if (!segs[patStart + j + 1].matches(path[strStart + i + j])) {
+                        continue strLoop;
+                    }
+                }
+                found = strStart + i;
+                break;
+            }
+            if (found == -1) {
+                return false;
+            }
+            patStart = patTmp;
+            strStart = found + patLength;
+        }
+        return onlyAnyDirs(segs, patStart, patEnd);
+    }
+
+    private static boolean onlyAnyDirs(Segment[] segs, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            if (!segs[i].anyDirs) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matches a single path segment against a pattern where '*' matches any number of characters and '?' exactly one.
+     */
+    static boolean wildcardMatch(String pattern, String s) {
+        int p = 0;
+        int i = 0;
+        int star = -1;
+        int mark = 0;
+        while (i < s.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = i;
+            } else if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == s.charAt(i))) {
+                p++;
+                i++;
+            } else if (star >= 0) {
+                p = star + 1;
+                i = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
@@ -0,0 +1,613 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawls several actions in one pass.
+ * Every file is read and decoded only once and its content is given to all actions whose pattern includes the file.
+ * Every action gets its files in the same order as when it would be crawled alone.
+ */
+public class CrawlPipeline {
+    private static class Registration {
+        private final CrawlPattern pattern;
+        private final CrawlAction action;
+
+        Registration(CrawlPattern pattern, CrawlAction action) {
+            this.pattern = pattern;
+            this.action = action;
+        }
+    }
+
+    private static class FileTask {
+        private final File file;
+        private final long size;
+        private final String directory;
+        private final List<Registration> registrations;
+        private Future<ByteBuffer> bytes;
+
+        FileTask(File file, long size, String directory, List<Registration> registrations) {
+            this.file = file;
+            this.size = size;
+            this.directory = directory;
+            this.registrations = registrations;
+        }
+    }
+
+    private static class PendingTask {
+        private final FileTask task;
+        private final Future<List<ForkableCrawlAction>> forks;
+
+        PendingTask(FileTask task, Future<List<ForkableCrawlAction>> forks) {
+            this.task = task;
+            this.forks = forks;
+        }
+    }
+
+    private static final FileTask END = new FileTask(null, 0, null, null);
+    private static final int QUEUE_SIZE = 1024;
+    private static final int PENDING_PER_THREAD = 4;
+    private static final int MAX_PREFETCH_SIZE = 1024 * 1024;
+
+    private final int threads;
+    private int ioThreads;
+    private final List<Registration> registrations = new ArrayList<Registration>();
+    private final CrawlStatistics statistics = new CrawlStatistics();
+    private CrawlProfile profile = new CrawlProfile();
+
+    public CrawlPipeline() {
+        this(1);
+    }
+
+    /**
+     * @param threads the number of files to crawl concurrently.
+     *                Files are only crawled concurrently if all actions are {@link ForkableCrawlAction}s.
+     */
+    public CrawlPipeline(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public CrawlPipeline add(CrawlPattern pattern, CrawlAction action) {
+        registrations.add(new Registration(pattern, action));
+        return this;
+    }
+
+    public CrawlStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Lets the next files be read ahead by I/O threads while the crawling thread(s) work on the current ones.
+     * This helps on file systems with high latency like NFS, where opening and reading a file takes longer than matching it.
+     * On Java 21 and later, virtual threads are used, otherwise a pool of platform threads.
+     *
+     * @param ioThreads the number of files read ahead concurrently, 0 to read every file in the thread crawling it.
+     *                  Only files smaller than 1MB are read ahead, so this also bounds the memory used for reading ahead.
+     */
+    public CrawlPipeline setIoThreads(int ioThreads) {
+        this.ioThreads = Math.max(0, ioThreads);
+        return this;
+    }
+
+    public CrawlProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Lets several pipelines collect into the same profile.
+     */
+    public CrawlPipeline setProfile(CrawlProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * Walks the directories in a separate thread which hands the found files over to the crawling thread(s)
+     * through a bounded queue, so walking and reading overlap and memory does not depend on the number of files.
+     */
+    public void crawl() throws IOException {
+        final BlockingQueue<FileTask> queue = new ArrayBlockingQueue<FileTask>(QUEUE_SIZE);
+        final Walker walker = new Walker(queue);
+        final Thread walkerThread = new Thread(walker, "languager-walker");
+        walkerThread.setDaemon(true);
+        walkerThread.start();
+        final ReadAhead readAhead = new ReadAhead(queue);
+        try {
+            if (threads > 1 && isForkable()) {
+                crawlParallel(readAhead);
+            } else {
+                crawlSequential(readAhead);
+            }
+            walker.checkFailure();
+        } finally {
+            walkerThread.interrupt();
+            readAhead.shutdown();
+        }
+    }
+
+    /**
+     * Walks every distinct basedir once and finds the registrations that include each file.
+     * Every registration gets its files in the same order as FileUtils.getFiles would return them.
+     * Directories that cannot contain any included file are not entered.
+     */
+    private class Walker implements Runnable {
+        private final BlockingQueue<FileTask> queue;
+        private volatile Exception failure;
+
+        Walker(BlockingQueue<FileTask> queue) {
+            this.queue = queue;
+        }
+
+        public void run() {
+            try {
+                for (Map.Entry<String, List<Registration>> basedir : registrationsByBasedir().entrySet()) {
+                    walk(basedir.getKey(), basedir.getValue());
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                if (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        queue.put(END);
+                    } catch (InterruptedException e) {
+                        //crawling has been stopped
+                    }
+                }
+            }
+        }
+
+        void checkFailure() throws IOException {
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+        }
+
+        private void walk(final String basedir, final List<Registration> registrationsOfBasedir) throws IOException {
+            final Path root = new File(basedir).toPath();
+            if (!Files.isDirectory(root)) {
+                throw new IllegalStateException("basedir " + basedir + " does not exist or is not a directory");
+            }
+            final List<CrawlPatternMatcher> matchers = new ArrayList<CrawlPatternMatcher>();
+            for (Registration registration : registrationsOfBasedir) {
+                matchers.add(new CrawlPatternMatcher(registration.pattern));
+            }
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                private String[] segments = new String[16];
+                private int depth = 0;
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    setSegment(dir);
+                    for (CrawlPatternMatcher matcher : matchers) {
+                        if (matcher.couldHoldIncluded(segments, depth + 1)) {
+                            depth++;
+                            return FileVisitResult.CONTINUE;
+                        }
+                    }
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (!dir.equals(root)) {
+                        depth--;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    setSegment(file);
+                    List<Registration> including = null;
+                    for (int i = 0; i < matchers.size(); i++) {
+                        if (matchers.get(i).isIncluded(segments, depth + 1)) {
+                            if (including == null) {
+                                including = new ArrayList<Registration>();
+                            }
+                            including.add(registrationsOfBasedir.get(i));
+                        }
+                    }
+                    if (including != null) {
+                        final String directory = depth == 0 ? CrawlProfile.BASEDIR : segments[0];
+                        for (int i = 0; i < including.size(); i++) {
+                            if (isFirstOfPattern(including, i)) {
+                                profile.counters(including.get(i).pattern, directory).listed();
+                            }
+                        }
+                        try {
+                            queue.put(new FileTask(new File(basedir + File.separator + relativePath()), attrs.size(), directory, including));
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private void setSegment(Path path) {
+                    if (depth == segments.length) {
+                        segments = Arrays.copyOf(segments, 2 * segments.length);
+                    }
+                    segments[depth] = path.getFileName().toString();
+                }
+
+                private String relativePath() {
+                    final StringBuilder s = new StringBuilder(segments[0]);
+                    for (int i = 1; i <= depth; i++) {
+                        s.append(File.separatorChar).append(segments[i]);
+                    }
+                    return s.toString();
+                }
+            });
+        }
+    }
+
+    private static boolean isFirstOfPattern(List<Registration> registrations, int index) {
+        for (int i = 0; i < index; i++) {
+            if (registrations.get(i).pattern == registrations.get(index).pattern) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, List<Registration>> registrationsByBasedir() {
+        final Map<String, List<Registration>> res = new LinkedHashMap<String, List<Registration>>();
+        for (Registration registration : registrations) {
+            final String basedir = registration.pattern.getBasedir().getPath();
+            List<Registration> registrationsOfBasedir = res.get(basedir);
+            if (registrationsOfBasedir == null) {
+                registrationsOfBasedir = new ArrayList<Registration>();
+                res.put(basedir, registrationsOfBasedir);
+            }
+            registrationsOfBasedir.add(registration);
+        }
+        return res;
+    }
+
+    private boolean isForkable() {
+        for (Registration registration : registrations) {
+            if (!(registration.action instanceof ForkableCrawlAction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void crawlSequential(ReadAhead readAhead) throws IOException {
+        FileTask task;
+        while ((task = readAhead.next()) != END) {
+            final List<CrawlAction> actions = new ArrayList<CrawlAction>(task.registrations.size());
+            for (Registration registration : task.registrations) {
+                actions.add(registration.action);
+            }
+            crawlFile(task, actions);
+        }
+    }
+
+    /**
+     * Every file is crawled by its own forks of the actions.
+     * The forks are joined in the order of the files, so the result is the same as when crawling sequentially.
+     */
+    private void crawlParallel(ReadAhead readAhead) throws IOException {
+        final ExecutorService executor = new ForkJoinPool(threads);
+        try {
+            final Deque<PendingTask> pending = new ArrayDeque<PendingTask>();
+            FileTask task;
+            while ((task = readAhead.next()) != END) {
+                final FileTask fileTask = task;
+                pending.add(new PendingTask(task, executor.submit(new Callable<List<ForkableCrawlAction>>() {
+                    public List<ForkableCrawlAction> call() throws IOException {
+                        final List<ForkableCrawlAction> actions = new ArrayList<ForkableCrawlAction>(fileTask.registrations.size());
+                        for (Registration registration : fileTask.registrations) {
+                            actions.add(((ForkableCrawlAction) registration.action).fork());
+                        }
+                        crawlFile(fileTask, actions);
+                        return actions;
+                    }
+                })));
+                while (!pending.isEmpty() && (pending.size() >= threads * PENDING_PER_THREAD || pending.peek().forks.isDone())) {
+                    join(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                join(pending.poll());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void join(PendingTask pending) throws IOException {
+        final List<ForkableCrawlAction> actions = await(pending.forks);
+        for (int i = 0; i < actions.size(); i++) {
+            ((ForkableCrawlAction) pending.task.registrations.get(i).action).join(actions.get(i));
+        }
+    }
+
+    /**
+     * Takes the files found by the walker and starts reading the next {@link #ioThreads} of them in I/O threads.
+     */
+    private class ReadAhead {
+        private final BlockingQueue<FileTask> queue;
+        private final Deque<FileTask> ahead = new ArrayDeque<FileTask>();
+        private final ExecutorService executor;
+        private boolean ended;
+
+        ReadAhead(BlockingQueue<FileTask> queue) {
+            this.queue = queue;
+            this.executor = ioThreads == 0 ? null : ioExecutor(ioThreads);
+        }
+
+        FileTask next() throws IOException {
+            if (executor == null) {
+                return take(queue);
+            }
+            while (!ended && ahead.size() < ioThreads) {
+                final FileTask task = ahead.isEmpty() ? take(queue) : queue.poll();
+                if (task == null) {
+                    break;
+                }
+                if (task == END) {
+                    ended = true;
+                } else {
+                    readAhead(task);
+                    ahead.add(task);
+                }
+            }
+            return ahead.isEmpty() ? END : ahead.poll();
+        }
+
+        /**
+         * The I/O thread first checks if any action will read the file at once, so that files
+         * with cached results, oversized files and files read in windows are not read ahead.
+         * Then the crawling thread reads the file itself if it is needed after all.
+         */
+        private void readAhead(final FileTask task) {
+            if (task.size < MAX_PREFETCH_SIZE) {
+                task.bytes = executor.submit(new Callable<ByteBuffer>() {
+                    public ByteBuffer call() throws IOException {
+                        return mayReadAtOnce(task) ? ContentReader.readNewBytes(task.file) : null;
+                    }
+                });
+            }
+        }
+
+        private boolean mayReadAtOnce(FileTask task) throws IOException {
+            for (Registration registration : task.registrations) {
+                if (registration.action instanceof AbstractContentReadingCrawlAction
+                        && ((AbstractContentReadingCrawlAction) registration.action).mayReadAtOnce(task.file, task.size, registration.pattern)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void shutdown() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Uses virtual threads if available (Java 21+), as they make waiting for I/O cheap.
+     */
+    private static ExecutorService ioExecutor(int ioThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return Executors.newFixedThreadPool(ioThreads, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "languager-reader-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private FileTask take(BlockingQueue<FileTask> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while crawling");
+        }
+    }
+
+    /**
+     * Reads the file once and decodes it once per encoding, then lets all actions work on the content.
+     */
+    private void crawlFile(FileTask task, List<? extends CrawlAction> actions) throws IOException {
+        final File file = task.file;
+        final List<AbstractContentReadingCrawlAction> contentActions = new ArrayList<AbstractContentReadingCrawlAction>();
+        final List<CrawlPattern> contentPatterns = new ArrayList<CrawlPattern>();
+        final Map<String, Boolean> binaryByEncoding = new HashMap<String, Boolean>();
+        boolean oversized = false;
+        boolean binary = false;
+        boolean read = false;
+        for (int i = 0; i < actions.size(); i++) {
+            final CrawlPattern pattern = task.registrations.get(i).pattern;
+            final CrawlAction action = actions.get(i);
+            if (action instanceof AbstractContentReadingCrawlAction) {
+                final AbstractContentReadingCrawlAction contentAction = (AbstractContentReadingCrawlAction) action;
+                final boolean windows = contentAction.readsInWindows(file, pattern);
+                if (contentAction.skipsUnsuitableFiles() && task.size > pattern.getMaxFileSize()) {
+                    oversized = true;
+                } else if (contentAction.skipsUnsuitableFiles() && (windows || contentAction.usesCache())
+                        && looksBinary(file, pattern.getEncoding(), binaryByEncoding)) {
+                    binary = true;
+                } else if (!contentAction.needsContent(pattern.getBasedir(), file, pattern)) {
+                    read = true;
+                } else if (windows) {
+                    read = true;
+                    if (!contentAction.acceptsMapped(file, pattern)) {
+                        profile.counters(pattern, task.directory).read(0);
+                    } else {
+                        final long matches = contentAction.getMatches();
+                        final long start = System.nanoTime();
+                        contentAction.actionInWindows(pattern.getBasedir(), file, pattern);
+                        final CrawlProfile.Counters counters = profile.counters(pattern, task.directory);
+                        counters.read(0);
+                        counters.decoded(task.size, 0);
+                        counters.matched(contentAction.getMatches() - matches, System.nanoTime() - start);
+                    }
+                } else {
+                    contentActions.add(contentAction);
+                    contentPatterns.add(pattern);
+                }
+            } else {
+                final long start = System.nanoTime();
+                action.action(pattern.getBasedir(), file, pattern);
+                profile.counters(pattern, task.directory).matched(0, System.nanoTime() - start);
+            }
+        }
+        if (!contentActions.isEmpty()) {
+            if (crawlContent(task, contentActions, contentPatterns)) {
+                binary = true;
+            } else {
+                read = true;
+            }
+        }
+        //a file is only skipped if no content reading action used it
+        if (read) {
+            return;
+        }
+        if (oversized) {
+            statistics.skippedOversized(file, task.size);
+        } else if (binary) {
+            statistics.skippedBinary(file, task.size);
+        }
+    }
+
+    /**
+     * Checks the head of the file once per encoding.
+     */
+    private boolean looksBinary(File file, String encoding, Map<String, Boolean> binaryByEncoding) throws IOException {
+        Boolean binary = binaryByEncoding.get(encoding);
+        if (binary == null) {
+            binary = ContentReader.forCurrentThread().looksBinary(file, encoding);
+            binaryByEncoding.put(encoding, binary);
+        }
+        return binary;
+    }
+
+    /**
+     * @return if all actions skipped the file because it looks binary.
+     */
+    private boolean crawlContent(FileTask task, List<AbstractContentReadingCrawlAction> actions, List<CrawlPattern> patterns) throws IOException {
+        final File file = task.file;
+        final ContentReader reader = ContentReader.forCurrentThread();
+        final long readStart = System.nanoTime();
+        final ByteBuffer readAhead = task.bytes != null ? await(task.bytes) : null;
+        final ByteBuffer bytes = readAhead != null ? readAhead : reader.readBytes(file);
+        final long readNanos = System.nanoTime() - readStart;
+        final boolean[] accepted = new boolean[actions.size()];
+        int binary = 0;
+        for (int i = 0; i < actions.size(); i++) {
+            if (patterns.indexOf(patterns.get(i)) == i) {
+                profile.counters(patterns.get(i), task.directory).read(readNanos);
+            }
+            final AbstractContentReadingCrawlAction action = actions.get(i);
+            if (action.skipsUnsuitableFiles() && reader.looksBinary(bytes, patterns.get(i).getEncoding())) {
+                binary++;
+            } else {
+                accepted[i] = action.acceptsBytes(file, bytes.duplicate(), patterns.get(i));
+            }
+        }
+        final Set<String> decoded = new HashSet<String>();
+        final Set<CrawlPattern> decodedFor = new HashSet<CrawlPattern>();
+        for (int p = 0; p < patterns.size(); p++) {
+            final CrawlPattern pattern = patterns.get(p);
+            if (accepted[p] && decoded.add(pattern.getEncoding())) {
+                final long decodeStart = System.nanoTime();
+                final CharSequence content = reader.decode(bytes.duplicate(), pattern.getEncoding());
+                final long decodeNanos = System.nanoTime() - decodeStart;
+                for (int i = p; i < actions.size(); i++) {
+                    final CrawlPattern other = patterns.get(i);
+                    if (accepted[i] && other.getEncoding().equals(pattern.getEncoding())) {
+                        final CrawlProfile.Counters counters = profile.counters(other, task.directory);
+                        if (decodedFor.add(other)) {
+                            counters.decoded(bytes.remaining(), decodeNanos);
+                        }
+                        final AbstractContentReadingCrawlAction action = actions.get(i);
+                        final long matches = action.getMatches();
+                        final long start = System.nanoTime();
+                        action.action(other.getBasedir(), file, content, other);
+                        counters.matched(action.getMatches() - matches, System.nanoTime() - start);
+                    }
+                }
+            }
+        }
+        return binary == actions.size();
+    }
+
+    private <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while crawling");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package stni.languager.crawl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import stni.languager.SymbolTable;
+
+/**
+ * Collects per search and top level directory how many files were listed and read, how many bytes were decoded,
+ * how many matches were found and how much time was spent reading and matching.
+ * It shows which include patterns are worth narrowing.
+ * A file that is read once for several searches counts as read for each of them.
+ * Bytes are only decoded if no action rejected the file because it looks binary or cannot match.
+ * Files crawled in windows are read while matching, so their reading time counts as matching time.
+ */
+public class CrawlProfile {
+    /**
+     * The name of the directory of files lying directly in the basedir.
+     */
+    public static final String BASEDIR = ".";
+
+    public static class Counters {
+        private final AtomicLong filesListed = new AtomicLong();
+        private final AtomicLong filesRead = new AtomicLong();
+        private final AtomicLong bytesDecoded = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong readNanos = new AtomicLong();
+        private final AtomicLong matchNanos = new AtomicLong();
+
+        void listed() {
+            filesListed.incrementAndGet();
+        }
+
+        void read(long nanos) {
+            filesRead.incrementAndGet();
+            readNanos.addAndGet(nanos);
+        }
+
+        void decoded(long bytes, long nanos) {
+            bytesDecoded.addAndGet(bytes);
+            readNanos.addAndGet(nanos);
+        }
+
+        void matched(long count, long nanos) {
+            matches.addAndGet(count);
+            matchNanos.addAndGet(nanos);
+        }
+
+        void add(Counters counters) {
+            filesListed.addAndGet(counters.getFilesListed());
+            filesRead.addAndGet(counters.getFilesRead());
+            bytesDecoded.addAndGet(counters.getBytesDecoded());
+            matches.addAndGet(counters.getMatches());
+            readNanos.addAndGet(counters.getReadNanos());
+            matchNanos.addAndGet(counters.getMatchNanos());
+        }
+
+        public long getFilesListed() {
+            return filesListed.get();
+        }
+
+        public long getFilesRead() {
+            return filesRead.get();
+        }
+
+        public long getBytesDecoded() {
+            return bytesDecoded.get();
+        }
+
+        public long getMatches() {
+            return matches.get();
+        }
+
+        public long getReadNanos() {
+            return readNanos.get();
+        }
+
+        public long getMatchNanos() {
+            return matchNanos.get();
+        }
+    }
+
+    private static class Search {
+        private final CrawlPattern pattern;
+        private final Map<String, Counters> directories = new TreeMap<String, Counters>();
+
+        Search(CrawlPattern pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    private final Map<String, Search> searches = new LinkedHashMap<String, Search>();
+    private SymbolTable symbols;
+
+    /**
+     * @return the counters of the search described by the pattern for the given top level directory.
+     * Patterns with the same basedir, includes, excludes and encoding are the same search.
+     */
+    public synchronized Counters counters(CrawlPattern pattern, String directory) {
+        final String name = nameOf(pattern);
+        Search search = searches.get(name);
+        if (search == null) {
+            search = new Search(pattern);
+            searches.put(name, search);
+        }
+        Counters counters = search.directories.get(directory);
+        if (counters == null) {
+            counters = new Counters();
+            search.directories.put(directory, counters);
+        }
+        return counters;
+    }
+
+    /**
+     * @return the counters of the search summed over all directories.
+     */
+    public synchronized Counters total(CrawlPattern pattern) {
+        final Counters total = new Counters();
+        final Search search = searches.get(nameOf(pattern));
+        if (search != null) {
+            for (Counters counters : search.directories.values()) {
+                total.add(counters);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Lets the profile report the memory saved by the symbol table.
+     */
+    public void setSymbols(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    private static String nameOf(CrawlPattern pattern) {
+        return pattern.getBasedir().getPath() + "|" + pattern.getIncludes() + "|" + pattern.getExcludes() + "|" + pattern.getEncoding();
+    }
+
+    public void writeJson(File file) throws IOException {
+        Writer out = null;
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "utf-8"));
+            writeJson(out);
+        } finally {
+            Util.closeSilently(out);
+        }
+    }
+
+    public synchronized void writeJson(Writer out) throws IOException {
+        out.write("{\"searches\": [");
+        final List<Search> list = new ArrayList<Search>(searches.values());
+        for (int i = 0; i < list.size(); i++) {
+            final Search search = list.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write("  {\"basedir\": " + quoted(search.pattern.getBasedir().getPath())
+                    + ", \"includes\": " + quoted(search.pattern.getIncludes())
+                    + ", \"excludes\": " + quoted(search.pattern.getExcludes())
+                    + ", \"encoding\": " + quoted(search.pattern.getEncoding()) + ",\n");
+            out.write("   \"total\": " + json(total(search.pattern)) + ",\n");
+            out.write("   \"directories\": {");
+            boolean first = true;
+            for (Map.Entry<String, Counters> directory : search.directories.entrySet()) {
+                out.write(first ? "\n" : ",\n");
+                out.write("     " + quoted(directory.getKey()) + ": " + json(directory.getValue()));
+                first = false;
+            }
+            out.write("}}");
+        }
+        out.write("\n]");
+        if (symbols != null) {
+            out.write(",\n\"symbols\": {\"strings\": " + symbols.getEntries()
+                    + ", \"duplicates\": " + symbols.getDuplicates()
+                    + ", \"savedBytes\": " + symbols.getSavedBytes() + "}");
+        }
+        out.write("}\n");
+    }
+
+    private static String json(Counters counters) {
+        return "{\"filesListed\": " + counters.getFilesListed()
+                + ", \"filesRead\": " + counters.getFilesRead()
+                + ", \"bytesDecoded\": " + counters.getBytesDecoded()
+                + ", \"matches\": " + counters.getMatches()
+                + ", \"readMillis\": " + counters.getReadNanos() / 1000000
+                + ", \"matchMillis\": " + counters.getMatchNanos() / 1000000 + "}";
+    }
+
+    private static String quoted(String s) {
+        if (s == null) {
+            return "null";
+        }
+        final StringBuilder res = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                res.append('\\').append(c);
+            } else if (c < ' ') {
+                res.append(String.format("\\u%04x", (int) c));
+            } else {
+                res.append(c);
+            }
+        }
+        return res.append('"').toString();
+    }
+}
@@ -0,0 +1,62 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the files a {@link CrawlPipeline} skipped because they looked binary or exceeded
+ * {@link CrawlPattern#getMaxFileSize()}, so that include patterns can be tuned.
+ * A file is counted once, even if several searches of different basedirs skip it.
+ */
+public class CrawlStatistics {
+    private final AtomicLong binaryFiles = new AtomicLong();
+    private final AtomicLong binaryBytes = new AtomicLong();
+    private final AtomicLong oversizedFiles = new AtomicLong();
+    private final AtomicLong oversizedBytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<File> skippedFiles = new ConcurrentLinkedQueue<File>();
+    private final Set<String> counted = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    void skippedBinary(File file, long size) {
+        if (!counted.add(file.getAbsolutePath())) {
+            return;
+        }
+        binaryFiles.incrementAndGet();
+        binaryBytes.addAndGet(size);
+        skippedFiles.add(file);
+    }
+
+    void skippedOversized(File file, long size) {
+        if (!counted.add(file.getAbsolutePath())) {
+            return;
+        }
+        oversizedFiles.incrementAndGet();
+        oversizedBytes.addAndGet(size);
+        skippedFiles.add(file);
+    }
+
+    public long getBinaryFiles() {
+        return binaryFiles.get();
+    }
+
+    public long getBinaryBytes() {
+        return binaryBytes.get();
+    }
+
+    public long getOversizedFiles() {
+        return oversizedFiles.get();
+    }
+
+    public long getOversizedBytes() {
+        return oversizedBytes.get();
+    }
+
+    public List<File> getSkippedFiles() {
+        return new ArrayList<File>(skippedFiles);
+    }
+}
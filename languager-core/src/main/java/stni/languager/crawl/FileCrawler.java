@@ -1,10 +1,6 @@
 package stni.languager.crawl;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.List;
-
-import org.codehaus.plexus.util.FileUtils;
 
 /**
  *
@@ -12,16 +8,45 @@ import org.codehaus.plexus.util.FileUtils;
 public class FileCrawler {
 
     private final CrawlPattern crawlPattern;
+    private final int threads;
+    private CrawlProfile profile = new CrawlProfile();
+    private int ioThreads;
 
     public FileCrawler(CrawlPattern crawlPattern) {
+        this(crawlPattern, 1);
+    }
+
+    /**
+     * @param threads the number of files to crawl concurrently.
+     *                Only {@link ForkableCrawlAction}s are crawled concurrently, all others sequentially.
+     */
+    public FileCrawler(CrawlPattern crawlPattern, int threads) {
         this.crawlPattern = crawlPattern;
+        this.threads = threads;
+    }
+
+    public CrawlProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Lets several crawlers collect into the same profile.
+     */
+    public FileCrawler setProfile(CrawlProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * @see CrawlPipeline#setIoThreads(int)
+     */
+    public FileCrawler setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+        return this;
     }
 
     public <T extends CrawlAction> T crawl(T crawlAction) throws IOException {
-        List<File> files = FileUtils.getFiles(crawlPattern.getBasedir(), crawlPattern.getIncludes(), crawlPattern.getExcludes());
-        for (File file : files) {
-            crawlAction.action(crawlPattern.getBasedir(), file, crawlPattern);
-        }
+        new CrawlPipeline(threads).setIoThreads(ioThreads).setProfile(profile).add(crawlPattern, crawlAction).crawl();
         return crawlAction;
     }
 
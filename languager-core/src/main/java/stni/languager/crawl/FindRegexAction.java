@@ -5,7 +5,9 @@ import static stni.languager.crawl.FindRegexAction.Flag.WITH_EMPTY;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -13,45 +15,267 @@ import java.util.regex.Pattern;
 
 import stni.languager.FindResult;
 import stni.languager.SourcePosition;
+import stni.languager.SymbolTable;
 
 /**
  *
  */
-public class FindRegexAction extends AbstractContentReadingCrawlAction {
+public class FindRegexAction extends AbstractContentReadingCrawlAction implements ForkableCrawlAction, WindowedCrawlAction {
     public enum Flag {
         WITH_EMPTY, TRIM
     }
 
+    private final List<FindResult> collected = new ArrayList<FindResult>();
     private final List<FindResult> results = new ArrayList<FindResult>();
+    private FindResultConsumer consumer = new FindResultConsumer() {
+        public void found(FindResult result) {
+            collected.add(result);
+        }
+    };
 
     private final Pattern regex;
     private final Pattern ignoreRegex;
     private final EnumSet<Flag> flags;
+    private final FindResultCache cache;
+    private final RequiredLiteral requiredLiteral;
+    private int firstWindowResult;
+    private long nextSearch;
+    private long steps;
+    private SymbolTable symbols;
+    private FindResultCache.Version version;
 
     public FindRegexAction(String regex, String ignoreRegex, EnumSet<Flag> flags) {
+        this(regex, ignoreRegex, flags, null);
+    }
+
+    /**
+     * @param cache if not null, results of unchanged files are taken from this cache instead of crawling the files.
+     */
+    public FindRegexAction(String regex, String ignoreRegex, EnumSet<Flag> flags, FindResultCache cache) {
         this.regex = Pattern.compile(regex, Pattern.DOTALL);
         this.ignoreRegex = ignoreRegex == null ? null : Pattern.compile(ignoreRegex, Pattern.DOTALL);
         if (regex.indexOf('(') < 0 || regex.indexOf(')') < 0) {
             throw new IllegalArgumentException("Regex must contain at least one group");
         }
         this.flags = flags == null ? EnumSet.noneOf(Flag.class) : flags;
+        this.cache = cache;
+        this.requiredLiteral = RequiredLiteral.of(regex);
+    }
+
+    protected FindRegexAction(FindRegexAction template) {
+        this.regex = template.regex;
+        this.ignoreRegex = template.ignoreRegex;
+        this.flags = template.flags;
+        this.cache = template.cache;
+        this.requiredLiteral = template.requiredLiteral;
+        this.symbols = template.symbols;
+        this.consumer = null;
+    }
+
+    public FindRegexAction fork() {
+        return new FindRegexAction(this);
+    }
+
+    public void join(ForkableCrawlAction forked) {
+        results.addAll(((FindRegexAction) forked).results);
+        steps += ((FindRegexAction) forked).steps;
+        deliver();
+    }
+
+    /**
+     * Lets the results be received while crawling instead of being collected for {@link #getResults()}.
+     */
+    public void setConsumer(FindResultConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Lets equal findings share one instance.
+     */
+    public void setSymbols(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Hands the results of the last file over to the consumer.
+     * Forks have no consumer, they keep their results until they are joined.
+     */
+    private void deliver() {
+        if (consumer != null) {
+            for (FindResult result : results) {
+                consumer.found(result);
+            }
+            results.clear();
+        }
+    }
+
+    @Override
+    protected boolean needsContent(File basedir, File file, CrawlPattern pattern) throws IOException {
+        if (cache == null) {
+            return true;
+        }
+        version = new FindResultCache.Version(file);
+        final List<FindResult> cached = cache.lookup(signature(pattern), file);
+        if (cached == null) {
+            return true;
+        }
+        if (symbols == null) {
+            results.addAll(cached);
+        } else {
+            for (FindResult result : cached) {
+                results.add(symbols.internFindings(result));
+            }
+        }
+        deliver();
+        return false;
+    }
+
+    @Override
+    protected boolean mayNeedContent(File file, CrawlPattern pattern) throws IOException {
+        return cache == null || !cache.isUnchanged(signature(pattern), file);
+    }
+
+    /**
+     * Files not containing the literal every match of the regex requires are skipped without decoding them.
+     * The bytes are hashed for the cache here, so the file need not be read again to store its results.
+     */
+    @Override
+    protected boolean acceptsBytes(File file, ByteBuffer bytes, CrawlPattern pattern) throws IOException {
+        if (cache != null) {
+            version.hash(bytes);
+        }
+        if (mayMatch(bytes, pattern)) {
+            return true;
+        }
+        if (cache != null) {
+            cache.store(signature(pattern), file, version, Collections.<FindResult>emptyList());
+        }
+        return false;
+    }
+
+    protected boolean mayMatch(ByteBuffer bytes, CrawlPattern pattern) {
+        return requiredLiteral == null || requiredLiteral.mayBeContained(bytes, pattern.getEncoding());
+    }
+
+    /**
+     * Checks the decoded content for the required literal, if this could not be done on the bytes.
+     */
+    protected boolean mayMatch(CharSequence content, CrawlPattern pattern) {
+        return requiredLiteral == null || requiredLiteral.canCheckBytes(pattern.getEncoding()) || requiredLiteral.isContained(content);
+    }
+
+    protected String signature(CrawlPattern pattern) {
+        return FindResultCache.signature(getClass().getName() + "|" + regex.pattern() + "|" + (ignoreRegex == null ? "" : ignoreRegex.pattern()) + "|" + flags, pattern);
     }
 
     @Override
-    protected void doAction(File basedir, File file, String content, CrawlPattern pattern) throws IOException {
-        Matcher matcher = regex.matcher(content);
-        while (matcher.find()) {
-            if (isValidMatch(matcher)) {
-                List<String> finds = new ArrayList<String>();
-                for (int i = 1; i <= matcher.groupCount(); i++) {
-                    finds.add(group(matcher, i));
-                }
-                results.add(new FindResult(
-                        new SourcePosition(
-                                file, matcher.start(), matcher.end(),
-                                lineOfPosition(matcher.start()), columnOfPosition(matcher.start())),
-                        finds));
+    protected void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        final int firstResult = results.size();
+        if (mayMatch(content, pattern)) {
+            findResults(file, content, pattern);
+        }
+        if (cache != null) {
+            cache.store(signature(pattern), file, version, results.subList(firstResult, results.size()));
+        }
+        deliver();
+    }
+
+    @Override
+    protected boolean usesCache() {
+        return cache != null;
+    }
+
+    /**
+     * Binary or oversized files are not worth searching.
+     */
+    @Override
+    protected boolean skipsUnsuitableFiles() {
+        return true;
+    }
+
+    public boolean supportsWindows() {
+        return true;
+    }
+
+    /**
+     * Matches starting in the overlap to the next window are left to the next window,
+     * which starts searching after the last match of this window.
+     * Positions given to {@link #lineOfPosition} and {@link #columnOfPosition} are relative to the window.
+     */
+    public void doWindow(File basedir, File file, CharSequence window, long offset, boolean last, CrawlPattern pattern) throws IOException {
+        if (offset == 0) {
+            firstWindowResult = results.size();
+            nextSearch = 0;
+        }
+        final StepCountingCharSequence counting = countingSteps(window, file, pattern);
+        final Matcher matcher = regex.matcher(counting);
+        matcher.useTransparentBounds(true).useAnchoringBounds(false);
+        final int regionStart = (int) Math.min(window.length(), Math.max(0, nextSearch - offset));
+        matcher.region(regionStart, window.length());
+        final int acceptBefore = last ? window.length() + 1 : window.length() - pattern.getMaxMatchLength();
+        try {
+            counting.startFind(regionStart);
+            while (matcher.find() && matcher.start() < acceptBefore) {
+                addResult(file, matcher, offset);
+                nextSearch = offset + matcher.end();
+                counting.startFind(matcher.end());
+            }
+        } finally {
+            steps += counting.getSteps();
+        }
+        if (last) {
+            if (cache != null) {
+                cache.store(signature(pattern), file, version, results.subList(firstWindowResult, results.size()));
+            }
+            deliver();
+        }
+    }
+
+    private void findResults(File file, CharSequence content, CrawlPattern pattern) {
+        final StepCountingCharSequence counting = countingSteps(content, file, pattern);
+        final Matcher matcher = regex.matcher(counting);
+        try {
+            counting.startFind(0);
+            while (matcher.find()) {
+                addResult(file, matcher, 0);
+                counting.startFind(matcher.end());
+            }
+        } finally {
+            steps += counting.getSteps();
+        }
+    }
+
+    /**
+     * Wraps the content, so that the steps of the regex are counted and catastrophic backtracking is aborted.
+     */
+    StepCountingCharSequence countingSteps(CharSequence content, File file, CrawlPattern pattern) {
+        return new StepCountingCharSequence(content, regex, file, pattern.getMatchStepBudget());
+    }
+
+    void addSteps(long steps) {
+        this.steps += steps;
+    }
+
+    /**
+     * @return the number of character accesses the regex needed on all crawled files.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    private void addResult(File file, Matcher matcher, long offset) {
+        if (isValidMatch(matcher)) {
+            List<String> finds = new ArrayList<String>();
+            for (int i = 1; i <= matcher.groupCount(); i++) {
+                final String group = group(matcher, i);
+                finds.add(symbols == null ? group : symbols.intern(group));
             }
+            results.add(new FindResult(
+                    new SourcePosition(
+                            file, saturated(offset + matcher.start()), saturated(offset + matcher.end()),
+                            lineOfPosition(matcher.start()), columnOfPosition(matcher.start())),
+                    finds));
+            countMatch();
         }
     }
 
@@ -72,8 +296,11 @@ public class FindRegexAction extends AbstractContentReadingCrawlAction {
         return flags.contains(TRIM) ? group.trim() : group;
     }
 
+    /**
+     * @return the results, if no other consumer has been set.
+     */
     public List<FindResult> getResults() {
-        return results;
+        return collected;
     }
 
     public Pattern getRegex() {
@@ -0,0 +1,312 @@
+package stni.languager.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import stni.languager.FindResult;
+import stni.languager.SourcePosition;
+
+/**
+ * Keeps the results of {@link FindRegexAction}s per file between runs.
+ * A file's results are reused if its size and modification time or its content hash are unchanged.
+ * Results are kept separately per search signature (regex, flags, encoding and limits), so changing a search invalidates its results.
+ * Only the files that were looked up during a run are saved, so results of removed files are dropped.
+ */
+public class FindResultCache {
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static class Entry {
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final List<FindResult> results;
+
+        Entry(long size, long lastModified, String hash, List<FindResult> results) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.results = results;
+        }
+    }
+
+    /**
+     * The size and modification time of a file, taken before it is read, and the hash of the content then read.
+     * So if the file changes while it is crawled, the next run sees a changed modification time and compares the hashes.
+     */
+    static class Version {
+        private final long size;
+        private final long lastModified;
+        private String hash;
+
+        Version(File source) {
+            this.size = source.length();
+            this.lastModified = source.lastModified();
+        }
+
+        /**
+         * Hashes the content that was already read, so the file need not be read again. The position of the buffer is not changed.
+         */
+        void hash(ByteBuffer bytes) {
+            hash = FindResultCache.hash(bytes);
+        }
+    }
+
+    private final File file;
+    private final Map<String, Map<String, Entry>> previous;
+    private final ConcurrentMap<String, ConcurrentMap<String, Entry>> current = new ConcurrentHashMap<String, ConcurrentMap<String, Entry>>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private FindResultCache(File file, Map<String, Map<String, Entry>> previous) {
+        this.file = file;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the cache from the given file. If the file does not exist or cannot be read, the cache is empty.
+     */
+    public static FindResultCache load(File file) {
+        Map<String, Map<String, Entry>> entries = Collections.emptyMap();
+        if (file.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+                entries = read(in);
+            } catch (IOException e) {
+                //unreadable cache, start from scratch
+            } finally {
+                Util.closeSilently(in);
+            }
+        }
+        return new FindResultCache(file, entries);
+    }
+
+    /**
+     * @param search describes what is searched, like the regex and its flags.
+     * @return the signature of the search on the files of the pattern. It also contains the encoding and the limits
+     * deciding which files are skipped or scanned in windows, as changing them changes the results.
+     */
+    static String signature(String search, CrawlPattern pattern) {
+        return search + "|" + pattern.getEncoding() + "|" + pattern.getMaxFileSize()
+                + "|" + pattern.getWindowThreshold() + "|" + pattern.getMaxMatchLength();
+    }
+
+    /**
+     * @return the results of the file, or null if they are not cached or the file has changed.
+     */
+    List<FindResult> lookup(String signature, File source) throws IOException {
+        final Map<String, Entry> entries = previous.get(signature);
+        final Entry entry = entries == null ? null : entries.get(source.getAbsolutePath());
+        final long size = source.length();
+        if (entry == null || entry.size != size) {
+            misses.incrementAndGet();
+            return null;
+        }
+        final long lastModified = source.lastModified();
+        if (entry.lastModified == lastModified) {
+            put(signature, source, entry);
+        } else if (entry.hash.equals(hash(source))) {
+            put(signature, source, new Entry(size, lastModified, entry.hash, entry.results));
+        } else {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        final List<FindResult> res = new ArrayList<FindResult>(entry.results.size());
+        for (FindResult result : entry.results) {
+            final SourcePosition pos = result.getPosition();
+            res.add(new FindResult(new SourcePosition(source, pos.getStart(), pos.getEnd(), pos.getLine(), pos.getColumn()), result.getFindings()));
+        }
+        return res;
+    }
+
+    /**
+     * Checks without reading the file and without counting a hit or miss if its results can surely be reused.
+     */
+    boolean isUnchanged(String signature, File source) {
+        final Map<String, Entry> entries = previous.get(signature);
+        final Entry entry = entries == null ? null : entries.get(source.getAbsolutePath());
+        return entry != null && entry.size == source.length() && entry.lastModified == source.lastModified();
+    }
+
+    /**
+     * @param version the version of the file taken before it was read. If it has no hash, because the content
+     *                was not read at once, the file is hashed now. Then the results are only stored if it is still unchanged.
+     */
+    void store(String signature, File source, Version version, List<FindResult> results) throws IOException {
+        String hash = version.hash;
+        if (hash == null) {
+            hash = hash(source);
+            if (source.length() != version.size || source.lastModified() != version.lastModified) {
+                //changed while it was crawled, the hash may not belong to the results
+                return;
+            }
+        }
+        put(signature, source, new Entry(version.size, version.lastModified, hash, new ArrayList<FindResult>(results)));
+    }
+
+    private void put(String signature, File source, Entry entry) {
+        ConcurrentMap<String, Entry> entries = current.get(signature);
+        if (entries == null) {
+            current.putIfAbsent(signature, new ConcurrentHashMap<String, Entry>());
+            entries = current.get(signature);
+        }
+        entries.put(source.getAbsolutePath(), entry);
+    }
+
+    public void save() throws IOException {
+        file.getParentFile().mkdirs();
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            write(out);
+        } finally {
+            Util.closeSilently(out);
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    static String hash(ByteBuffer bytes) {
+        final MessageDigest digest = digest();
+        digest.update(bytes.duplicate());
+        return hex(digest.digest());
+    }
+
+    private static String hash(File source) throws IOException {
+        final MessageDigest digest = digest();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(source);
+            final byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buf)) > 0) {
+                digest.update(buf, 0, read);
+            }
+        } finally {
+            Util.closeSilently(in);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        final StringBuilder s = new StringBuilder();
+        for (byte b : hash) {
+            s.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return s.toString();
+    }
+
+    private static Map<String, Map<String, Entry>> read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Map<String, Entry>> res = new HashMap<String, Map<String, Entry>>();
+        final int signatures = in.readInt();
+        for (int i = 0; i < signatures; i++) {
+            final String signature = readString(in);
+            final Map<String, Entry> entries = new HashMap<String, Entry>();
+            final int entryCount = in.readInt();
+            for (int j = 0; j < entryCount; j++) {
+                final String path = readString(in);
+                final long size = in.readLong();
+                final long lastModified = in.readLong();
+                final String hash = readString(in);
+                final int resultCount = in.readInt();
+                final List<FindResult> results = new ArrayList<FindResult>(resultCount);
+                for (int k = 0; k < resultCount; k++) {
+                    final SourcePosition pos = new SourcePosition(null, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+                    final int findingCount = in.readInt();
+                    final List<String> findings = new ArrayList<String>(findingCount);
+                    for (int l = 0; l < findingCount; l++) {
+                        findings.add(readString(in));
+                    }
+                    results.add(new FindResult(pos, findings));
+                }
+                entries.put(path, new Entry(size, lastModified, hash, results));
+            }
+            res.put(signature, entries);
+        }
+        return res;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeInt(current.size());
+        for (Map.Entry<String, ConcurrentMap<String, Entry>> signature : current.entrySet()) {
+            writeString(out, signature.getKey());
+            out.writeInt(signature.getValue().size());
+            for (Map.Entry<String, Entry> entry : signature.getValue().entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().lastModified);
+                writeString(out, entry.getValue().hash);
+                out.writeInt(entry.getValue().results.size());
+                for (FindResult result : entry.getValue().results) {
+                    final SourcePosition pos = result.getPosition();
+                    out.writeInt(pos.getStart());
+                    out.writeInt(pos.getEnd());
+                    out.writeInt(pos.getLine());
+                    out.writeInt(pos.getColumn());
+                    out.writeInt(result.getFindings().size());
+                    for (String finding : result.getFindings()) {
+                        writeString(out, finding);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, "utf-8");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = s.getBytes("utf-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+}
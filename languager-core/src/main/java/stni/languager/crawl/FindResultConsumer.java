@@ -0,0 +1,11 @@
+package stni.languager.crawl;
+
+import stni.languager.FindResult;
+
+/**
+ * Receives the results of an action while it crawls, so they need not be collected until the crawl has ended.
+ * The results are received in the same order as when crawling sequentially, and always by the crawling thread.
+ */
+public interface FindResultConsumer {
+    void found(FindResult result);
+}
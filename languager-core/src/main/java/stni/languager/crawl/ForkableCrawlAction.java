@@ -0,0 +1,16 @@
+package stni.languager.crawl;
+
+/**
+ * A {@link CrawlAction} whose per file state can be split off, so that files can be crawled concurrently.
+ */
+public interface ForkableCrawlAction extends CrawlAction {
+    /**
+     * @return a new action with the same configuration as this one but with empty state.
+     */
+    ForkableCrawlAction fork();
+
+    /**
+     * Merges the state of an action created by {@link #fork()} back into this one.
+     */
+    void join(ForkableCrawlAction forked);
+}
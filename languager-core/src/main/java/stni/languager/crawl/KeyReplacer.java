@@ -0,0 +1,160 @@
+package stni.languager.crawl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces all keys of a map in one pass over a text, using an Aho-Corasick automaton.
+ * The automaton is immutable once built, so it can be shared between files and threads.
+ * <p/>
+ * If keys overlap in a text, the leftmost match is replaced, and among matches starting at the same position the longest.
+ * Replaced values are not scanned again. E.g. with the keys "ab", "abc" and "bcd", "abcd" becomes value(abc) + "d".
+ * Empty keys are ignored.
+ */
+class KeyReplacer {
+    private static final int ROOT = 0;
+
+    private final String[] values;
+    private final int[] keyLengths;
+
+    private final int[] edgeStart;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] fail;
+    private final int[] depth;
+    /**
+     * The index of the longest key that is a suffix of the node's string, or -1.
+     */
+    private final int[] match;
+
+    KeyReplacer(Map<?, ?> replacements) {
+        final List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        final List<Integer> terminal = new ArrayList<Integer>();
+        children.add(new TreeMap<Character, Integer>());
+        terminal.add(-1);
+        final List<String> valueList = new ArrayList<String>();
+        final List<Integer> lengthList = new ArrayList<Integer>();
+        for (Map.Entry<?, ?> entry : replacements.entrySet()) {
+            final String key = (String) entry.getKey();
+            if (key.length() == 0) {
+                continue;
+            }
+            int node = ROOT;
+            for (int i = 0; i < key.length(); i++) {
+                Integer next = children.get(node).get(key.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    terminal.add(-1);
+                    children.get(node).put(key.charAt(i), next);
+                }
+                node = next;
+            }
+            terminal.set(node, valueList.size());
+            valueList.add((String) entry.getValue());
+            lengthList.add(key.length());
+        }
+
+        values = valueList.toArray(new String[valueList.size()]);
+        keyLengths = new int[lengthList.size()];
+        for (int i = 0; i < keyLengths.length; i++) {
+            keyLengths[i] = lengthList.get(i);
+        }
+
+        final int nodes = children.size();
+        edgeStart = new int[nodes + 1];
+        edgeChars = new char[nodes - 1];
+        edgeTargets = new int[nodes - 1];
+        int edge = 0;
+        for (int node = 0; node < nodes; node++) {
+            edgeStart[node] = edge;
+            for (Map.Entry<Character, Integer> child : children.get(node).entrySet()) {
+                edgeChars[edge] = child.getKey();
+                edgeTargets[edge] = child.getValue();
+                edge++;
+            }
+        }
+        edgeStart[nodes] = edge;
+
+        fail = new int[nodes];
+        depth = new int[nodes];
+        match = new int[nodes];
+        match[ROOT] = -1;
+        final int[] queue = new int[nodes];
+        int head = 0, tail = 0;
+        queue[tail++] = ROOT;
+        while (head < tail) {
+            final int node = queue[head++];
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                final int child = edgeTargets[e];
+                depth[child] = depth[node] + 1;
+                fail[child] = node == ROOT ? ROOT : next(fail[node], edgeChars[e]);
+                match[child] = terminal.get(child) >= 0 ? terminal.get(child) : match[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private int edge(int node, char c) {
+        final int e = Arrays.binarySearch(edgeChars, edgeStart[node], edgeStart[node + 1], c);
+        return e < 0 ? -1 : edgeTargets[e];
+    }
+
+    private int next(int node, char c) {
+        int state = node;
+        while (true) {
+            final int target = edge(state, c);
+            if (target >= 0) {
+                return target;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Appends the text with all keys replaced to out.
+     */
+    void replace(CharSequence text, StringBuilder out) {
+        final int length = text.length();
+        int state = ROOT;
+        int copied = 0;
+        int pos = 0;
+        int candidate = -1;
+        int candidateStart = 0;
+        while (true) {
+            //commit the candidate once no match starting at or before it can be found anymore
+            if (candidate >= 0 && (pos == length || pos - depth[state] > candidateStart)) {
+                out.append(text, copied, candidateStart).append(values[candidate]);
+                copied = pos = candidateStart + keyLengths[candidate];
+                state = ROOT;
+                candidate = -1;
+                continue;
+            }
+            if (pos == length) {
+                break;
+            }
+            state = next(state, text.charAt(pos++));
+            final int key = match[state];
+            if (key >= 0) {
+                final int start = pos - keyLengths[key];
+                if (candidate < 0 || start <= candidateStart) {
+                    candidate = key;
+                    candidateStart = start;
+                }
+            }
+        }
+        out.append(text, copied, length);
+    }
+
+    String replace(CharSequence text) {
+        final StringBuilder s = new StringBuilder(text.length());
+        replace(text, s);
+        return s.toString();
+    }
+}
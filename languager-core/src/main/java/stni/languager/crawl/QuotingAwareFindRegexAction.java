@@ -2,65 +2,99 @@ package stni.languager.crawl;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-
-import stni.languager.FindResult;
+import java.util.EnumSet;
+import java.util.regex.Matcher;
 
 /**
- *
+ * Finds only matches that start inside of tags (between '<' and '>') or only matches that start outside of tags.
+ * The tags are found in one pass over the content, and as the matches come in ascending order,
+ * each match is classified by advancing a cursor over the tags.
  */
-public class QuotingAwareFindRegexAction extends AbstractContentReadingCrawlAction {
+public class QuotingAwareFindRegexAction extends FindRegexAction {
+    private final boolean inTag;
+    private int[] tagStarts = new int[16];
+    private int[] tagEnds = new int[16];
+    private int tagCount;
+    private int cursor;
+
+    /**
+     * @param inTag if matches inside of tags should be found, otherwise matches outside of tags are found.
+     */
+    public QuotingAwareFindRegexAction(String regex, String ignoreRegex, EnumSet<Flag> flags, FindResultCache cache, boolean inTag) {
+        super(regex, ignoreRegex, flags, cache);
+        this.inTag = inTag;
+    }
+
+    protected QuotingAwareFindRegexAction(QuotingAwareFindRegexAction template) {
+        super(template);
+        this.inTag = template.inTag;
+    }
 
-    private final List<FindResult> results = new ArrayList<FindResult>();
-    private Integer[] quoteStart;
-    private Integer[] quoteEnd;
+    @Override
+    public QuotingAwareFindRegexAction fork() {
+        return new QuotingAwareFindRegexAction(this);
+    }
 
     @Override
-    protected void doAction(File basedir, File file, String content, CrawlPattern pattern) throws IOException {
-        //To change body of implemented methods use File | Settings | File Templates.
+    protected String signature(CrawlPattern pattern) {
+        return super.signature(pattern) + "|" + inTag;
     }
 
-//    protected void doAction(File basedir, File file, String content, QuotingRegexCrawlPattern pattern) {
-//        findQuotes(content);
-//        Matcher matcher = pattern.getRegexPattern().matcher(content);
-//        while (matcher.find()) {
-//            if (isPositionInQuote(matcher.start()) == pattern.isInQuotes()) {
-//                List<String> finds = new ArrayList<String>();
-//                for (int i = 1; i <= matcher.groupCount(); i++) {
-//                    finds.add(matcher.group(i));
-//                }
-//                results.add(new FindResult(
-//                        file.getAbsolutePath(), lineOfPosition(matcher.start()), columnOfPosition(matcher.start()), finds));
-//            }
-//        }
-//    }
+    /**
+     * A tag could start before a window, so the whole content is needed.
+     */
+    @Override
+    public boolean supportsWindows() {
+        return false;
+    }
 
-    private void findQuotes(String content) {
-        List<Integer> quoteStartList = new ArrayList<Integer>();
-        List<Integer> quoteEndList = new ArrayList<Integer>();
-        boolean inQuote = false;
+    @Override
+    protected void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        findTags(content);
+        super.doAction(basedir, file, content, pattern);
+    }
+
+    @Override
+    protected boolean isValidMatch(Matcher matcher) {
+        return isInTag(matcher.start()) == inTag && super.isValidMatch(matcher);
+    }
+
+    private void findTags(CharSequence content) {
+        tagCount = 0;
+        cursor = 0;
+        int start = -1;
         for (int i = 0; i < content.length(); i++) {
-            if (!inQuote && content.charAt(i) == '<') {
-                inQuote = true;
-                quoteStartList.add(i);
-            }
-            if (inQuote && content.charAt(i) == '>') {
-                inQuote = false;
-                quoteEndList.add(i);
+            final char c = content.charAt(i);
+            if (start < 0 && c == '<') {
+                start = i;
+            } else if (start >= 0 && c == '>') {
+                addTag(start, i);
+                start = -1;
             }
         }
-        quoteStart = quoteStartList.toArray(new Integer[quoteStartList.size()]);
-        quoteEnd = quoteEndList.toArray(new Integer[quoteEndList.size()]);
+        if (start >= 0) {
+            addTag(start, content.length());
+        }
     }
 
-    private boolean isPositionInQuote(int pos) {
-        int startBefore = -Arrays.binarySearch(quoteStart, pos);
-        return quoteEnd[startBefore] > pos;
+    private void addTag(int start, int end) {
+        if (tagCount == tagStarts.length) {
+            tagStarts = Arrays.copyOf(tagStarts, 2 * tagCount);
+            tagEnds = Arrays.copyOf(tagEnds, 2 * tagCount);
+        }
+        tagStarts[tagCount] = start;
+        tagEnds[tagCount] = end;
+        tagCount++;
     }
 
-    public List<FindResult> getResults() {
-        return results;
+    /**
+     * Positions must be given in ascending order.
+     */
+    private boolean isInTag(int pos) {
+        while (cursor < tagCount && tagEnds[cursor] < pos) {
+            cursor++;
+        }
+        return cursor < tagCount && tagStarts[cursor] <= pos;
     }
 }
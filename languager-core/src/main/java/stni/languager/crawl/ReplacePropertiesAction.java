@@ -1,37 +1,45 @@
 package stni.languager.crawl;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.util.Map;
 import java.util.Properties;
 
 /**
  *
  */
-public class ReplacePropertiesAction extends AbstractContentReadingCrawlAction {
-    private final Properties properties;
+public class ReplacePropertiesAction extends AbstractContentReadingCrawlAction implements ForkableCrawlAction {
+    private final KeyReplacer replacer;
     private final File targetDir;
+    private final TargetWriter writer;
 
     public ReplacePropertiesAction(Properties properties, File targetDir) {
-        this.properties = properties;
+        this(properties, targetDir, new TargetWriter());
+    }
+
+    /**
+     * Replaces all keys of the properties by their values, see {@link KeyReplacer} for overlapping keys.
+     */
+    public ReplacePropertiesAction(Properties properties, File targetDir, TargetWriter writer) {
+        this(new KeyReplacer(properties), targetDir, writer);
+    }
+
+    private ReplacePropertiesAction(KeyReplacer replacer, File targetDir, TargetWriter writer) {
+        this.replacer = replacer;
         this.targetDir = targetDir;
+        this.writer = writer;
+    }
+
+    public ReplacePropertiesAction fork() {
+        return new ReplacePropertiesAction(replacer, targetDir, writer);
+    }
+
+    public void join(ForkableCrawlAction forked) {
     }
 
     @Override
-    protected void doAction(File basedir, File file, String content, CrawlPattern pattern) throws IOException {
-        for (Map.Entry<Object, Object> property : properties.entrySet()) {
-            content = content.replace((String) property.getKey(), (String) property.getValue());
-        }
-        File target = target(file, basedir, targetDir);
-        OutputStreamWriter out = null;
-        try {
-            out = new OutputStreamWriter(new FileOutputStream(new File(target, file.getName())), pattern.getEncoding());
-            out.write(content);
-        } finally {
-            Util.closeSilently(out);
-        }
+    protected void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        final String replaced = replacer.replace(content);
+        writer.write(new File(target(file, basedir, targetDir), file.getName()), replaced, pattern.getEncoding());
     }
 
 }
@@ -1,41 +1,163 @@
 package stni.languager.crawl;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.regex.Matcher;
 
 /**
  *
  */
 public class ReplaceRegexAction extends FindRegexAction {
-    private final ReplaceRegexActionParameter parameter;
+    private final List<ReplaceRegexActionParameter> parameters;
+    private final TargetWriter writer;
+    private final StringBuilder rendered = new StringBuilder();
 
     public ReplaceRegexAction(String regex, EnumSet<Flag> flags, ReplaceRegexActionParameter parameter) {
+        this(regex, flags, Collections.singletonList(parameter), new TargetWriter());
+    }
+
+    /**
+     * Matches every file only once and writes one replaced file per parameter, e.g. one per language.
+     */
+    public ReplaceRegexAction(String regex, EnumSet<Flag> flags, List<ReplaceRegexActionParameter> parameters, TargetWriter writer) {
         super(regex, null, flags);
-        this.parameter = parameter;
+        this.parameters = new ArrayList<ReplaceRegexActionParameter>(parameters);
+        this.writer = writer;
+    }
+
+    protected ReplaceRegexAction(ReplaceRegexAction template) {
+        super(template);
+        this.parameters = template.parameters;
+        this.writer = template.writer;
     }
 
     @Override
-    protected void doAction(File basedir, File file, String content, CrawlPattern pattern) throws IOException {
-        Matcher matcher = getRegex().matcher(content);
-        StringBuffer s = new StringBuffer();
-        while (matcher.find()) {
-            if (isValidMatch(matcher)) {
-                matcher.appendReplacement(s, parameter.getReplacer().replace(matcher));
-            }
+    public ReplaceRegexAction fork() {
+        return new ReplaceRegexAction(this);
+    }
+
+    /**
+     * Every file must be written to the target directory, so no file is skipped.
+     */
+    @Override
+    protected boolean acceptsBytes(File file, ByteBuffer bytes, CrawlPattern pattern) throws IOException {
+        return true;
+    }
+
+    /**
+     * Every file must be written to the target directory.
+     */
+    @Override
+    protected boolean skipsUnsuitableFiles() {
+        return false;
+    }
+
+    /**
+     * The whole content is needed to write the target.
+     */
+    @Override
+    public boolean supportsWindows() {
+        return false;
+    }
+
+    @Override
+    protected void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        final StringBuilder[] replaced = new StringBuilder[parameters.size()];
+        for (int i = 0; i < replaced.length; i++) {
+            replaced[i] = new StringBuilder(content.length());
         }
-        matcher.appendTail(s);
-        File target = target(file, basedir, parameter.getTargetDir());
-        OutputStreamWriter out = null;
+        final StepCountingCharSequence counting = countingSteps(content, file, pattern);
+        final Matcher matcher = getRegex().matcher(counting);
+        int appended = 0;
         try {
-            out = new OutputStreamWriter(new FileOutputStream(new File(target, file.getName())), pattern.getEncoding());
-            out.write(s.toString());
+            counting.startFind(0);
+            while (matcher.find()) {
+                if (isValidMatch(matcher)) {
+                    countMatch();
+                    for (int i = 0; i < replaced.length; i++) {
+                        replaced[i].append(content, appended, matcher.start());
+                        final ReplacementTemplate template = parameters.get(i).getTemplate();
+                        if (template == null) {
+                            appendReplacement(replaced[i], matcher, parameters.get(i).getReplacer().replace(matcher));
+                        } else {
+                            rendered.setLength(0);
+                            template.render(matcher, rendered);
+                            appendReplacement(replaced[i], matcher, rendered);
+                        }
+                    }
+                    appended = matcher.end();
+                }
+                counting.startFind(matcher.end());
+            }
         } finally {
-            Util.closeSilently(out);
+            addSteps(counting.getSteps());
+        }
+        for (int i = 0; i < replaced.length; i++) {
+            replaced[i].append(content, appended, content.length());
+            writer.write(new File(target(file, basedir, parameters.get(i).getTargetDir()), file.getName()), replaced[i], pattern.getEncoding());
         }
     }
 
+    /**
+     * Like {@link Matcher#appendReplacement}, but without advancing the matcher,
+     * so that the same match can be replaced into several buffers.
+     */
+    static void appendReplacement(StringBuilder s, Matcher m, CharSequence replacement) {
+        final int len = replacement.length();
+        for (int i = 0; i < len; i++) {
+            final char c = replacement.charAt(i);
+            if (c == '\\') {
+                if (++i == len) {
+                    throw new IllegalArgumentException("character to be escaped is missing");
+                }
+                s.append(replacement.charAt(i));
+            } else if (c == '$') {
+                if (++i == len) {
+                    throw new IllegalArgumentException("Illegal group reference: group index is missing");
+                }
+                final String group;
+                if (replacement.charAt(i) == '{') {
+                    final int end = indexOf(replacement, '}', i);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("named capturing group is missing trailing '}'");
+                    }
+                    group = m.group(replacement.subSequence(i + 1, end).toString());
+                    i = end;
+                } else {
+                    int ref = replacement.charAt(i) - '0';
+                    if (ref < 0 || ref > 9) {
+                        throw new IllegalArgumentException("Illegal group reference");
+                    }
+                    while (i + 1 < len) {
+                        final int digit = replacement.charAt(i + 1) - '0';
+                        if (digit < 0 || digit > 9 || ref * 10 + digit > m.groupCount()) {
+                            break;
+                        }
+                        ref = ref * 10 + digit;
+                        i++;
+                    }
+                    group = m.group(ref);
+                }
+                if (group != null) {
+                    s.append(group);
+                }
+            } else {
+                s.append(c);
+            }
+        }
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -1,7 +1,6 @@
 package stni.languager.crawl;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.regex.Matcher;
@@ -16,69 +15,16 @@ public class ReplaceRegexActionParameter {
 
     private final File targetDir;
     private final Replacer replacer;
+    private final ReplacementTemplate template;
 
-    public ReplaceRegexActionParameter(File targetDir, final String replacement, final String parameterMarker, final String parameterSeparator, final Properties properties, final List<Escape> escapes) {
+    public ReplaceRegexActionParameter(File targetDir, String replacement, String parameterMarker, String parameterSeparator, Properties properties, List<Escape> escapes) {
         this.targetDir = targetDir;
+        this.template = new ReplacementTemplate(replacement, parameterMarker, parameterSeparator, properties, escapes);
         this.replacer = new Replacer() {
             public String replace(Matcher m) {
-                String replaced = replacement
-                        .replace("$1", value(m, 1))
-                        .replace("$2", value(m, 2));
-                return applyParameters(m, replaced);
-            }
-
-            private String applyParameters(Matcher m, String s) {
-                if (parameterMarker == null || parameterMarker.length() == 0) {
-                    return s;
-                }
-                List<String> parameters = extractParameters(m);
-
-                String res = s;
-                for (String parameter : parameters) {
-                    int pos = res.indexOf(parameterMarker);
-                    if (pos < 0) {
-                        break;
-                    }
-                    res = res.substring(0, pos) + parameter + res.substring(pos + 2);
-                }
-
-                return res;
-            }
-
-            private List<String> extractParameters(Matcher m) {
-                List<String> parameters = new ArrayList<String>();
-                for (int i = 2; i < m.groupCount(); i++) {
-                    String group = m.group(i);
-                    if (group == null) {
-                        parameters.add("");
-                    } else {
-                        if (parameterSeparator == null || parameterSeparator.length() == 0) {
-                            parameters.add(group);
-                        } else {
-                            for (String part : group.split(parameterSeparator)) {
-                                parameters.add(part);
-                            }
-                        }
-                    }
-                }
-                return parameters;
-            }
-
-            private String value(Matcher m, int group) {
-                String g = m.group(group);
-                if (g == null) {
-                    return "";
-                }
-                String s = properties.getProperty(g);
-                if (s == null) {
-                    return "";
-                }
-                if (escapes != null) {
-                    for (Escape escape : escapes) {
-                        s = s.replace(escape.getFrom(), escape.getTo());
-                    }
-                }
-                return s;
+                final StringBuilder s = new StringBuilder();
+                template.render(m, s);
+                return s.toString();
             }
         };
     }
@@ -86,12 +32,20 @@ public class ReplaceRegexActionParameter {
     public ReplaceRegexActionParameter(File targetDir, Replacer replacer) {
         this.targetDir = targetDir;
         this.replacer = replacer;
+        this.template = null;
     }
 
     public Replacer getReplacer() {
         return replacer;
     }
 
+    /**
+     * @return the compiled replacement or null if a custom {@link Replacer} is used.
+     */
+    ReplacementTemplate getTemplate() {
+        return template;
+    }
+
     public File getTargetDir() {
         return targetDir;
     }
@@ -0,0 +1,165 @@
+package stni.languager.crawl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A replacement compiled once per search: literal parts, references to the values of the keys in group 1 and 2
+ * ("$1", "$2") and parameter slots (the parameter marker), which are filled with the parameters found in the
+ * groups 2 up to the last but one group, split by the parameter separator.
+ */
+class ReplacementTemplate {
+    private static final String REGEX_CHARS = "\\[](){}.*+?^$|";
+
+    private final String[] literals;
+    private final int[] groups;
+    private final String parameterMarker;
+    private final String literalSeparator;
+    private final Pattern separator;
+    private final ValueTable values;
+
+    ReplacementTemplate(String replacement, String parameterMarker, String parameterSeparator, Properties properties, List<Escape> escapes) {
+        final List<String> literalList = new ArrayList<String>();
+        final List<Integer> groupList = new ArrayList<Integer>();
+        int start = 0;
+        for (int i = 0; i < replacement.length() - 1; i++) {
+            if (replacement.charAt(i) == '$' && (replacement.charAt(i + 1) == '1' || replacement.charAt(i + 1) == '2')) {
+                literalList.add(replacement.substring(start, i));
+                groupList.add(replacement.charAt(i + 1) - '0');
+                start = i + 2;
+                i++;
+            }
+        }
+        literalList.add(replacement.substring(start));
+        literals = literalList.toArray(new String[literalList.size()]);
+        groups = new int[groupList.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = groupList.get(i);
+        }
+
+        this.parameterMarker = parameterMarker == null || parameterMarker.length() == 0 ? null : parameterMarker;
+        if (parameterSeparator == null || parameterSeparator.length() == 0) {
+            literalSeparator = null;
+            separator = null;
+        } else if (isLiteral(parameterSeparator)) {
+            literalSeparator = parameterSeparator;
+            separator = null;
+        } else {
+            literalSeparator = null;
+            separator = Pattern.compile(parameterSeparator);
+        }
+        this.values = new ValueTable(properties, escapes);
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (REGEX_CHARS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the replacement of the current match to out.
+     */
+    void render(Matcher m, StringBuilder out) {
+        final int start = out.length();
+        for (int i = 0; i < groups.length; i++) {
+            out.append(literals[i]).append(value(m, groups[i]));
+        }
+        out.append(literals[groups.length]);
+        if (parameterMarker != null) {
+            applyParameters(m, out, start);
+        }
+    }
+
+    /**
+     * Fills the parameter markers from left to right. Inserted parameters are not searched for markers again.
+     */
+    private void applyParameters(Matcher m, StringBuilder out, int start) {
+        int pos = start;
+        for (int i = 2; i < m.groupCount(); i++) {
+            final String group = m.group(i);
+            if (group == null) {
+                pos = fill(out, pos, "", 0, 0);
+            } else if (literalSeparator != null) {
+                pos = fillSplit(out, pos, group);
+            } else if (separator != null) {
+                for (String part : separator.split(group)) {
+                    pos = fill(out, pos, part, 0, part.length());
+                    if (pos < 0) {
+                        break;
+                    }
+                }
+            } else {
+                pos = fill(out, pos, group, 0, group.length());
+            }
+            if (pos < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Splits like {@link String#split(String)}, but without compiling a regex or creating an array:
+     * Trailing empty parts are dropped and a group without separator is one part.
+     */
+    private int fillSplit(StringBuilder out, int pos, String group) {
+        int sep = group.indexOf(literalSeparator);
+        if (sep < 0) {
+            return fill(out, pos, group, 0, group.length());
+        }
+        int partStart = 0;
+        int pendingEmpty = 0;
+        while (true) {
+            final int partEnd = sep < 0 ? group.length() : sep;
+            if (partEnd == partStart) {
+                pendingEmpty++;
+            } else {
+                for (; pendingEmpty > 0; pendingEmpty--) {
+                    pos = fill(out, pos, group, 0, 0);
+                    if (pos < 0) {
+                        return pos;
+                    }
+                }
+                pos = fill(out, pos, group, partStart, partEnd);
+                if (pos < 0) {
+                    return pos;
+                }
+            }
+            if (sep < 0) {
+                return pos;
+            }
+            partStart = sep + literalSeparator.length();
+            sep = group.indexOf(literalSeparator, partStart);
+        }
+    }
+
+    /**
+     * Replaces the next marker at or after pos with the parameter.
+     *
+     * @return the position after the inserted parameter or -1 if there is no more marker.
+     */
+    private int fill(StringBuilder out, int pos, CharSequence parameter, int start, int end) {
+        final int marker = out.indexOf(parameterMarker, pos);
+        if (marker < 0) {
+            return -1;
+        }
+        out.delete(marker, marker + parameterMarker.length());
+        out.insert(marker, parameter, start, end);
+        return marker + end - start;
+    }
+
+    private String value(Matcher m, int group) {
+        final String g = m.group(group);
+        if (g == null) {
+            return "";
+        }
+        final String s = values.get(g);
+        return s == null ? "" : s;
+    }
+}
@@ -0,0 +1,188 @@
+package stni.languager.crawl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A literal that must occur in every match of a regex.
+ * Files not containing it can be skipped before the regex is run, for ASCII compatible encodings even before decoding.
+ */
+class RequiredLiteral {
+    private static final byte[] NOT_APPLICABLE = new byte[0];
+
+    private final String literal;
+    private final ConcurrentMap<String, byte[]> encoded = new ConcurrentHashMap<String, byte[]>();
+
+    RequiredLiteral(String literal) {
+        this.literal = literal;
+    }
+
+    /**
+     * Escapes whose meaning depends on the following characters.
+     */
+    private static final String ESCAPES_WITH_ARGUMENT = "uxpPkcN0123456789";
+
+    /**
+     * Derives the longest literal that every match of the regex must contain.
+     * Only the top level of the regex is analyzed, groups, character classes and quantified characters are skipped.
+     * Regexes with inline flags, escapes taking an argument or nested and intersected classes are not analyzed.
+     *
+     * @return the literal or null if no literal could be derived.
+     */
+    static RequiredLiteral of(String regex) {
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || regex.charAt(i + 1) == 'Q' || ESCAPES_WITH_ARGUMENT.indexOf(regex.charAt(i + 1)) >= 0
+                        || (regex.charAt(i + 1) == 'b' && i + 2 < regex.length() && regex.charAt(i + 2) == '{')) {
+                    return null;
+                }
+                c = regex.charAt(++i);
+                literal = !inClass && depth == 0 && !Character.isLetterOrDigit(c);
+            } else if (inClass) {
+                if (c == '[' || (c == '&' && i + 1 < regex.length() && regex.charAt(i + 1) == '&')) {
+                    //nested classes and intersections
+                    return null;
+                }
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == '(') {
+                if (isInlineFlag(regex, i)) {
+                    //inline flags like (?i) or (?x) change the meaning of literals
+                    return null;
+                }
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|') {
+                if (depth == 0) {
+                    return null;
+                }
+            } else if (c == '{') {
+                i = regex.indexOf('}', i);
+                if (i < 0) {
+                    return null;
+                }
+            } else {
+                literal = depth == 0 && ".^$*+?".indexOf(c) < 0;
+            }
+            final char next = i + 1 < regex.length() ? regex.charAt(i + 1) : 0;
+            final boolean quantified = next == '?' || next == '*' || next == '{' || next == '+';
+            if (literal && (!quantified || next == '+')) {
+                run.append(c);
+            }
+            if (!literal || quantified) {
+                if (run.length() > longest.length()) {
+                    longest = run.toString();
+                }
+                run.setLength(0);
+            }
+        }
+        if (run.length() > longest.length()) {
+            longest = run.toString();
+        }
+        return longest.length() == 0 ? null : new RequiredLiteral(longest);
+    }
+
+    /**
+     * Groups like (?:, (?= or (?<name> are no flags, everything else starting with (? is.
+     */
+    private static boolean isInlineFlag(String regex, int pos) {
+        if (pos + 2 >= regex.length() || regex.charAt(pos + 1) != '?') {
+            return false;
+        }
+        final char c = regex.charAt(pos + 2);
+        return ":=!<>".indexOf(c) < 0;
+    }
+
+    String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * @return if the literal can be searched in the undecoded bytes of the given encoding.
+     */
+    boolean canCheckBytes(String encoding) {
+        return bytesOf(encoding) != NOT_APPLICABLE;
+    }
+
+    /**
+     * @return false if the literal is surely not contained in the bytes. The position of the buffer is not changed.
+     */
+    boolean mayBeContained(ByteBuffer bytes, String encoding) {
+        final byte[] needle = bytesOf(encoding);
+        if (needle == NOT_APPLICABLE) {
+            return true;
+        }
+        final byte first = needle[0];
+        final int last = bytes.limit() - needle.length;
+        outer:
+        for (int i = bytes.position(); i <= last; i++) {
+            if (bytes.get(i) == first) {
+                for (int j = 1; j < needle.length; j++) {
+                    if (bytes.get(i + j) != needle[j]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isContained(CharSequence content) {
+        final char first = literal.charAt(0);
+        final int last = content.length() - literal.length();
+        outer:
+        for (int i = 0; i <= last; i++) {
+            if (content.charAt(i) == first) {
+                for (int j = 1; j < literal.length(); j++) {
+                    if (content.charAt(i + j) != literal.charAt(j)) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only ASCII literals in encodings that represent ASCII characters as single ASCII bytes can be searched
+     * in the raw bytes, as they are then found exactly if they are contained in the decoded content.
+     */
+    private byte[] bytesOf(String encoding) {
+        byte[] bytes = encoded.get(encoding);
+        if (bytes == null) {
+            bytes = NOT_APPLICABLE;
+            try {
+                final Charset charset = Charset.forName(encoding);
+                final byte[] ascii = literal.getBytes("US-ASCII");
+                final byte[] inCharset = literal.getBytes(charset);
+                if (new String(ascii, "US-ASCII").equals(literal) && Arrays.equals(ascii, inCharset)
+                        && "\n".getBytes(charset).length == 1) {
+                    bytes = ascii;
+                }
+            } catch (Exception e) {
+                //unknown encoding, check decoded content
+            }
+            encoded.put(encoding, bytes);
+        }
+        return bytes;
+    }
+}
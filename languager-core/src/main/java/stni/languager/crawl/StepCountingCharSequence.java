@@ -0,0 +1,87 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the character accesses of a regex on a content, to find expensive regexes and
+ * to abort catastrophic backtracking once a find has used up its budget.
+ * Scanning for the next match is linear in the scanned chars, so every char a find advances over
+ * adds to its budget. Large files with few matches are not aborted, as long as nothing backtracks.
+ */
+class StepCountingCharSequence implements CharSequence {
+    private static final int STEPS_PER_CHAR = 64;
+
+    private final CharSequence content;
+    private final Pattern regex;
+    private final File file;
+    private final long budget;
+    private long limit;
+    private long steps;
+    private long findStartSteps;
+    private int findStart;
+    private int furthest;
+
+    /**
+     * @param budget the number of steps allowed for one find, in addition to the steps per scanned char.
+     */
+    StepCountingCharSequence(CharSequence content, Pattern regex, File file, long budget) {
+        this.content = content;
+        this.regex = regex;
+        this.file = file;
+        this.budget = budget;
+        startFind(0);
+    }
+
+    /**
+     * Gives the next find a new budget. Must be called before every {@link java.util.regex.Matcher#find()}.
+     *
+     * @param from the position the find starts searching at.
+     */
+    void startFind(int from) {
+        findStartSteps = steps;
+        findStart = from;
+        furthest = from;
+        limit = plus(steps, budget);
+    }
+
+    private static long plus(long a, long b) {
+        return b > Long.MAX_VALUE - a ? Long.MAX_VALUE : a + b;
+    }
+
+    long getSteps() {
+        return steps;
+    }
+
+    public int length() {
+        return content.length();
+    }
+
+    public char charAt(int index) {
+        if (index > furthest) {
+            furthest = index;
+        }
+        if (++steps > limit) {
+            checkBudget();
+        }
+        return content.charAt(index);
+    }
+
+    private void checkBudget() {
+        final long allowed = plus(budget, STEPS_PER_CHAR * (long) (furthest - findStart));
+        if (steps - findStartSteps > allowed) {
+            throw new IllegalStateException("Regex '" + regex.pattern() + "' needed more than " + allowed
+                    + " steps for a match in file " + file + ". Probably it backtracks catastrophically.");
+        }
+        limit = plus(findStartSteps, allowed);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+        return content.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return content.toString();
+    }
+}
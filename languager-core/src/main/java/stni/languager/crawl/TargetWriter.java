@@ -0,0 +1,190 @@
+package stni.languager.crawl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes replaced files, but leaves targets alone whose content would not change, so their modification time is kept.
+ * Can be shared by several actions and threads to count all written and skipped files.
+ * <p/>
+ * With I/O threads, files are written behind: {@link #write} only encodes the content and queues it,
+ * so crawling and writing overlap. The queued bytes are limited by a capacity, writers wait when it is exhausted.
+ * A failed write is thrown by the next {@link #write} or by {@link #close}, which must be called to wait for all writes.
+ */
+public class TargetWriter implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+    };
+
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final ExecutorService[] executors;
+    private final int capacity;
+    private final Semaphore available;
+    private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+    public TargetWriter() {
+        this(0, 0);
+    }
+
+    /**
+     * @param ioThreads the number of threads writing behind, 0 to write in the calling thread.
+     *                  All writes to a target are done by the same thread, so they keep their order.
+     * @param capacity  the maximum number of bytes waiting to be written.
+     */
+    public TargetWriter(int ioThreads, int capacity) {
+        this.executors = new ExecutorService[Math.max(0, ioThreads)];
+        for (int i = 0; i < executors.length; i++) {
+            final String name = "languager-writer-" + i;
+            executors[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        this.capacity = Math.max(1, capacity);
+        this.available = new Semaphore(this.capacity);
+    }
+
+    public void write(final File target, CharSequence content, String encoding) throws IOException {
+        checkFailure();
+        final byte[] bytes = content.toString().getBytes(encoding);
+        if (executors.length == 0) {
+            writeNow(target, bytes);
+            return;
+        }
+        final int permits = Math.min(bytes.length, capacity);
+        try {
+            available.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to write " + target);
+        }
+        executors[(target.hashCode() & Integer.MAX_VALUE) % executors.length].execute(new Runnable() {
+            public void run() {
+                try {
+                    if (failure.get() == null) {
+                        writeNow(target, bytes);
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, new IOException("Could not write " + target, e));
+                } finally {
+                    available.release(permits);
+                }
+            }
+        });
+    }
+
+    private void writeNow(File target, byte[] bytes) throws IOException {
+        if (hasContent(target, bytes)) {
+            skipped.incrementAndGet();
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(target);
+            final FileChannel channel = out.getChannel();
+            final ByteBuffer buf = DIRECT_BUFFERS.get();
+            for (int pos = 0; pos < bytes.length; pos += buf.capacity()) {
+                buf.clear();
+                buf.put(bytes, pos, Math.min(buf.capacity(), bytes.length - pos));
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+        } finally {
+            Util.closeSilently(out);
+        }
+        written.incrementAndGet();
+    }
+
+    private boolean hasContent(File file, byte[] bytes) throws IOException {
+        if (!file.isFile() || file.length() != bytes.length) {
+            return false;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            final byte[] buf = new byte[Math.min(BUFFER_SIZE, Math.max(bytes.length, 1))];
+            int pos = 0;
+            int read;
+            while ((read = in.read(buf)) > 0) {
+                if (pos + read > bytes.length) {
+                    return false;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buf[i] != bytes[pos + i]) {
+                        return false;
+                    }
+                }
+                pos += read;
+            }
+            return pos == bytes.length;
+        } finally {
+            Util.closeSilently(in);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        final IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all queued files are written.
+     *
+     * @throws IOException if a file could not be written.
+     */
+    public void close() throws IOException {
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+        }
+        try {
+            for (ExecutorService executor : executors) {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    //still writing
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for files to be written");
+        }
+        checkFailure();
+    }
+
+    /**
+     * When writing behind, the counts are only complete after {@link #close}.
+     */
+    public int getWritten() {
+        return written.get();
+    }
+
+    public int getSkipped() {
+        return skipped.get();
+    }
+}
@@ -0,0 +1,585 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import stni.languager.FindResult;
+import stni.languager.SourcePosition;
+import stni.languager.SymbolTable;
+
+/**
+ * Extracts messages and unmessaged texts from HTML, JSP and JS files in one linear pass, without regexes.
+ * <p/>
+ * Messages are message tags like <code>&lt;msg key='key'&gt;default&lt;/msg&gt;</code> in markup and
+ * strings marked with a comment like <code>/*-key*&#47;'default'</code> in JS, their findings are the trimmed key and default value.
+ * Negatives are the text nodes of markup and unmarked strings in JS, their finding is the trimmed text.
+ * Comments, JSP scriptlets and style blocks are skipped. Files ending with ".js" are scanned as JS,
+ * all others as markup with JS in script blocks.
+ * <p/>
+ * Positions are like the ones of the equivalent {@link FindRegexAction}s: A message spans the whole tag or
+ * the marker comment with the string, a text node spans from the '>' before it to the '<' after it,
+ * and a JS string includes its quotes.
+ */
+public class TemplateLexerAction extends AbstractContentReadingCrawlAction implements ForkableCrawlAction {
+    public static final String DEFAULT_MESSAGE_TAG = "msg";
+    public static final String DEFAULT_KEY_ATTRIBUTE = "key";
+
+    private static final Set<String> REGEX_KEYWORDS = new HashSet<String>(Arrays.asList(
+            "return", "typeof", "instanceof", "in", "of", "new", "delete", "void", "throw", "case", "do", "else", "yield", "await"));
+
+    private final List<FindResult> collectedResults = new ArrayList<FindResult>();
+    private final List<FindResult> collectedNegatives = new ArrayList<FindResult>();
+    private final List<FindResult> results = new ArrayList<FindResult>();
+    private final List<FindResult> negatives = new ArrayList<FindResult>();
+    private FindResultConsumer consumer = new FindResultConsumer() {
+        public void found(FindResult result) {
+            collectedResults.add(result);
+        }
+    };
+    private FindResultConsumer negativeConsumer = new FindResultConsumer() {
+        public void found(FindResult result) {
+            collectedNegatives.add(result);
+        }
+    };
+    private final String messageTag;
+    private final String keyAttribute;
+    private final Pattern ignoreRegex;
+    private final FindResultCache cache;
+    private SymbolTable symbols;
+    private FindResultCache.Version version;
+
+    private File file;
+    private CharSequence content;
+    private int length;
+    /**
+     * There is no closing message tag at or after this position, so it is not searched again for every unclosed tag.
+     */
+    private int noMessageCloseFrom;
+
+    public TemplateLexerAction(String ignoreRegex, FindResultCache cache) {
+        this(DEFAULT_MESSAGE_TAG, DEFAULT_KEY_ATTRIBUTE, ignoreRegex, cache);
+    }
+
+    /**
+     * @param ignoreRegex negatives matching this regex are ignored.
+     * @param cache       if not null, results of unchanged files are taken from this cache instead of crawling the files.
+     */
+    public TemplateLexerAction(String messageTag, String keyAttribute, String ignoreRegex, FindResultCache cache) {
+        this.messageTag = messageTag;
+        this.keyAttribute = keyAttribute;
+        this.ignoreRegex = ignoreRegex == null ? null : Pattern.compile(ignoreRegex, Pattern.DOTALL);
+        this.cache = cache;
+    }
+
+    private TemplateLexerAction(TemplateLexerAction template) {
+        this.messageTag = template.messageTag;
+        this.keyAttribute = template.keyAttribute;
+        this.ignoreRegex = template.ignoreRegex;
+        this.cache = template.cache;
+        this.symbols = template.symbols;
+        this.consumer = null;
+        this.negativeConsumer = null;
+    }
+
+    public TemplateLexerAction fork() {
+        return new TemplateLexerAction(this);
+    }
+
+    public void join(ForkableCrawlAction forked) {
+        results.addAll(((TemplateLexerAction) forked).results);
+        negatives.addAll(((TemplateLexerAction) forked).negatives);
+        deliver();
+    }
+
+    /**
+     * Lets the messages be received while crawling instead of being collected for {@link #getResults()}.
+     */
+    public void setConsumer(FindResultConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Lets the negatives be received while crawling instead of being collected for {@link #getNegatives()}.
+     */
+    public void setNegativeConsumer(FindResultConsumer negativeConsumer) {
+        this.negativeConsumer = negativeConsumer;
+    }
+
+    /**
+     * Lets equal keys, values and texts share one instance.
+     */
+    public void setSymbols(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Hands the results of the last file over to the consumers.
+     * Forks have no consumers, they keep their results until they are joined.
+     */
+    private void deliver() {
+        if (consumer != null) {
+            for (FindResult result : results) {
+                consumer.found(result);
+            }
+            results.clear();
+        }
+        if (negativeConsumer != null) {
+            for (FindResult negative : negatives) {
+                negativeConsumer.found(negative);
+            }
+            negatives.clear();
+        }
+    }
+
+    @Override
+    protected boolean mayNeedContent(File file, CrawlPattern pattern) throws IOException {
+        return cache == null || !cache.isUnchanged(signature(pattern) + "|results", file)
+                || !cache.isUnchanged(signature(pattern) + "|negatives", file);
+    }
+
+    @Override
+    protected boolean needsContent(File basedir, File file, CrawlPattern pattern) throws IOException {
+        if (cache == null) {
+            return true;
+        }
+        version = new FindResultCache.Version(file);
+        final List<FindResult> cachedResults = cache.lookup(signature(pattern) + "|results", file);
+        final List<FindResult> cachedNegatives = cache.lookup(signature(pattern) + "|negatives", file);
+        if (cachedResults == null || cachedNegatives == null) {
+            return true;
+        }
+        addInterned(results, cachedResults);
+        addInterned(negatives, cachedNegatives);
+        deliver();
+        return false;
+    }
+
+    private void addInterned(List<FindResult> list, List<FindResult> cached) {
+        if (symbols == null) {
+            list.addAll(cached);
+        } else {
+            for (FindResult result : cached) {
+                list.add(symbols.internFindings(result));
+            }
+        }
+    }
+
+    private String signature(CrawlPattern pattern) {
+        return FindResultCache.signature(getClass().getName() + "|" + messageTag + "|" + keyAttribute + "|" + (ignoreRegex == null ? "" : ignoreRegex.pattern()), pattern);
+    }
+
+    /**
+     * Hashes the bytes for the cache, so the file need not be read again to store its results.
+     */
+    @Override
+    protected boolean acceptsBytes(File file, ByteBuffer bytes, CrawlPattern pattern) throws IOException {
+        if (cache != null) {
+            version.hash(bytes);
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean usesCache() {
+        return cache != null;
+    }
+
+    @Override
+    protected boolean skipsUnsuitableFiles() {
+        return true;
+    }
+
+    @Override
+    protected void doAction(File basedir, File file, CharSequence content, CrawlPattern pattern) throws IOException {
+        final int firstResult = results.size();
+        final int firstNegative = negatives.size();
+        this.file = file;
+        this.content = content;
+        this.length = content.length();
+        this.noMessageCloseFrom = length;
+        try {
+            if (file.getName().endsWith(".js")) {
+                scanScript(0, length);
+            } else {
+                scanMarkup();
+            }
+        } finally {
+            this.content = null;
+        }
+        if (cache != null) {
+            cache.store(signature(pattern) + "|results", file, version, results.subList(firstResult, results.size()));
+            cache.store(signature(pattern) + "|negatives", file, version, negatives.subList(firstNegative, negatives.size()));
+        }
+        deliver();
+    }
+
+    private void scanMarkup() {
+        int pos = 0;
+        int textStart = 0;
+        while (pos < length) {
+            if (content.charAt(pos) != '<' || !isTagStart(pos + 1)) {
+                pos++;
+                continue;
+            }
+            addText(textStart, pos);
+            if (startsWith(pos, "<!--")) {
+                pos = skipPast(pos + 4, "-->");
+            } else if (startsWith(pos, "<%--")) {
+                pos = skipPast(pos + 4, "--%>");
+            } else if (startsWith(pos, "<%")) {
+                pos = skipPast(pos + 2, "%>");
+            } else {
+                pos = scanTag(pos);
+            }
+            textStart = pos;
+        }
+        addText(textStart, length);
+    }
+
+    /**
+     * @return the position after the tag, or after the element if it is a message, script or style.
+     */
+    private int scanTag(int start) {
+        final int tagEnd = endOfTag(start + 1);
+        final boolean selfClosing = content.charAt(tagEnd - 1) == '>' && content.charAt(tagEnd - 2) == '/';
+        if (content.charAt(start + 1) == '/' || selfClosing) {
+            return tagEnd;
+        }
+        final int nameEnd = endOfName(start + 1);
+        if (nameMatches(start + 1, nameEnd, messageTag)) {
+            final String key = attribute(nameEnd, tagEnd);
+            final String close = "</" + messageTag + ">";
+            final int closeStart = key == null ? -1 : indexOfMessageClose(close, tagEnd);
+            if (closeStart >= 0) {
+                addResult(results, start, closeStart + close.length(), key, content.subSequence(tagEnd, closeStart).toString());
+                return closeStart + close.length();
+            }
+        } else if (nameMatches(start + 1, nameEnd, "script")) {
+            final int closeStart = indexOfIgnoreCase("</script", tagEnd);
+            scanScript(tagEnd, closeStart < 0 ? length : closeStart);
+            return closeStart < 0 ? length : endOfTag(closeStart + 2);
+        } else if (nameMatches(start + 1, nameEnd, "style")) {
+            final int closeStart = indexOfIgnoreCase("</style", tagEnd);
+            return closeStart < 0 ? length : endOfTag(closeStart + 2);
+        }
+        return tagEnd;
+    }
+
+    /**
+     * Tags are scanned in order, so once no close tag was found after a position, there is none after later positions either.
+     */
+    private int indexOfMessageClose(String close, int from) {
+        if (from >= noMessageCloseFrom) {
+            return -1;
+        }
+        final int closeStart = indexOfIgnoreCase(close, from);
+        if (closeStart < 0) {
+            noMessageCloseFrom = from;
+        }
+        return closeStart;
+    }
+
+    private void scanScript(int from, int to) {
+        int pos = from;
+        String markedKey = null;
+        int markerStart = 0;
+        while (pos < to) {
+            final char c = content.charAt(pos);
+            final char next = pos + 1 < to ? content.charAt(pos + 1) : 0;
+            if (c == '/' && next == '/') {
+                final int lineEnd = indexOf("\n", pos, to);
+                pos = lineEnd < 0 ? to : lineEnd;
+                markedKey = null;
+            } else if (c == '/' && next == '*') {
+                final int commentEnd = indexOf("*/", pos + 2, to);
+                final int end = commentEnd < 0 ? to : commentEnd + 2;
+                if (commentEnd >= 0 && content.charAt(pos + 2) == '-') {
+                    markedKey = content.subSequence(pos + 3, commentEnd).toString();
+                    markerStart = pos;
+                } else {
+                    markedKey = null;
+                }
+                pos = end;
+            } else if (c == '/' && isRegexStart(pos, from)) {
+                pos = endOfRegex(pos, to);
+                markedKey = null;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                final int end = endOfString(pos, to);
+                final boolean terminated = end - 1 > pos && content.charAt(end - 1) == c;
+                final String value = content.subSequence(pos + 1, terminated ? end - 1 : end).toString();
+                if (markedKey != null) {
+                    addResult(results, markerStart, end, markedKey, value);
+                } else {
+                    addNegative(pos, end, value);
+                }
+                markedKey = null;
+                pos = end;
+            } else {
+                if (!Character.isWhitespace(c)) {
+                    markedKey = null;
+                }
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * A slash starts a regex literal instead of being a division, if it follows an operator, a punctuator or a keyword.
+     */
+    private boolean isRegexStart(int pos, int from) {
+        int i = pos - 1;
+        while (i >= from && Character.isWhitespace(content.charAt(i))) {
+            i--;
+        }
+        if (i < from) {
+            return true;
+        }
+        final char c = content.charAt(i);
+        if ("(,=:[!&|?{};+-*%~^<>".indexOf(c) >= 0) {
+            return true;
+        }
+        int wordStart = i;
+        while (wordStart >= from && Character.isLetter(content.charAt(wordStart))) {
+            wordStart--;
+        }
+        return wordStart < i && REGEX_KEYWORDS.contains(content.subSequence(wordStart + 1, i + 1).toString());
+    }
+
+    /**
+     * @return the position after the regex literal and its flags. Slashes in character classes do not end it.
+     */
+    private int endOfRegex(int start, int to) {
+        int i = start + 1;
+        boolean inClass = false;
+        while (i < to) {
+            final char c = content.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\n') {
+                return i;
+            } else if (c == '[') {
+                inClass = true;
+                i++;
+            } else if (c == ']') {
+                inClass = false;
+                i++;
+            } else if (c == '/' && !inClass) {
+                i++;
+                while (i < to && Character.isLetter(content.charAt(i))) {
+                    i++;
+                }
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return to;
+    }
+
+    private int endOfString(int start, int to) {
+        final char quote = content.charAt(start);
+        int i = start + 1;
+        while (i < to) {
+            final char c = content.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else if (c == '\n' && quote != '`') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return to;
+    }
+
+    private void addText(int from, int to) {
+        final int start = from > 0 && content.charAt(from - 1) == '>' ? from - 1 : from;
+        final int end = to < length ? to + 1 : to;
+        addNegative(start, end, content.subSequence(from, to).toString());
+    }
+
+    private void addNegative(int start, int end, String text) {
+        final String trimmed = text.trim();
+        if (trimmed.length() > 0 && (ignoreRegex == null || !ignoreRegex.matcher(trimmed).matches())) {
+            negatives.add(findResult(start, end, Arrays.asList(symbol(trimmed))));
+            countMatch();
+        }
+    }
+
+    private void addResult(List<FindResult> list, int start, int end, String key, String value) {
+        list.add(findResult(start, end, Arrays.asList(symbol(key.trim()), symbol(value.trim()))));
+        countMatch();
+    }
+
+    private String symbol(String s) {
+        return symbols == null ? s : symbols.intern(s);
+    }
+
+    private FindResult findResult(int start, int end, List<String> findings) {
+        return new FindResult(new SourcePosition(file, start, end, lineOfPosition(start), columnOfPosition(start)), findings);
+    }
+
+    /**
+     * @return the value of the key attribute in the tag or null if the tag has no such attribute.
+     */
+    private String attribute(int from, int tagEnd) {
+        int i = from;
+        while (i < tagEnd) {
+            while (i < tagEnd && !isNameChar(content.charAt(i))) {
+                i++;
+            }
+            final int nameStart = i;
+            final int nameEnd = endOfName(i);
+            int j = nameEnd;
+            while (j < tagEnd && Character.isWhitespace(content.charAt(j))) {
+                j++;
+            }
+            if (j >= tagEnd || content.charAt(j) != '=') {
+                i = Math.max(nameEnd, i + 1);
+                continue;
+            }
+            j++;
+            while (j < tagEnd && Character.isWhitespace(content.charAt(j))) {
+                j++;
+            }
+            final int valueStart;
+            final int valueEnd;
+            if (j < tagEnd && (content.charAt(j) == '\'' || content.charAt(j) == '"')) {
+                valueStart = j + 1;
+                final int quote = indexOf(String.valueOf(content.charAt(j)), valueStart, tagEnd);
+                valueEnd = quote < 0 ? tagEnd : quote;
+                i = valueEnd + 1;
+            } else {
+                valueStart = j;
+                int k = j;
+                while (k < tagEnd && !Character.isWhitespace(content.charAt(k)) && content.charAt(k) != '>') {
+                    k++;
+                }
+                valueEnd = k;
+                i = k;
+            }
+            if (nameMatches(nameStart, nameEnd, keyAttribute)) {
+                return content.subSequence(valueStart, valueEnd).toString();
+            }
+        }
+        return null;
+    }
+
+    private boolean isTagStart(int pos) {
+        if (pos >= length) {
+            return false;
+        }
+        final char c = content.charAt(pos);
+        return Character.isLetter(c) || c == '/' || c == '!' || c == '%';
+    }
+
+    /**
+     * Like in {@link #endOfString}, a quote ends at a newline, and also at a '>'.
+     * So an unmatched quote like in <code>alt=don't</code> does not hide the rest of the file.
+     */
+    private int endOfTag(int from) {
+        int i = from;
+        while (i < length) {
+            final char c = content.charAt(i);
+            if (c == '"' || c == '\'') {
+                i++;
+                while (i < length && content.charAt(i) != c && content.charAt(i) != '>' && content.charAt(i) != '\n') {
+                    i++;
+                }
+                if (i < length && content.charAt(i) == c) {
+                    i++;
+                }
+            } else if (c == '>') {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private int endOfName(int from) {
+        int i = from;
+        while (i < length && isNameChar(content.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == ':' || c == '-' || c == '_' || c == '.';
+    }
+
+    private boolean nameMatches(int start, int end, String name) {
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.toLowerCase(content.charAt(start + i)) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWith(int pos, String s) {
+        if (pos + s.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (content.charAt(pos + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipPast(int from, String end) {
+        final int pos = indexOf(end, from, length);
+        return pos < 0 ? length : pos + end.length();
+    }
+
+    /**
+     * @return the position of s, if it ends before to, else -1.
+     */
+    private int indexOf(String s, int from, int to) {
+        for (int i = from; i <= to - s.length(); i++) {
+            if (startsWith(i, s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfIgnoreCase(String s, int from) {
+        for (int i = from; i <= length - s.length(); i++) {
+            if (nameMatches(i, i + s.length(), s)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the messages, if no other consumer has been set.
+     */
+    public List<FindResult> getResults() {
+        return collectedResults;
+    }
+
+    /**
+     * @return the negatives, if no other negative consumer has been set.
+     */
+    public List<FindResult> getNegatives() {
+        return collectedNegatives;
+    }
+}
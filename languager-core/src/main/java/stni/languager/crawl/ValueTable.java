@@ -0,0 +1,71 @@
+package stni.languager.crawl;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * An immutable key to escaped value map with open addressing, built once per language and search.
+ * Can be read by several threads without synchronization.
+ */
+class ValueTable {
+    private final String[] keys;
+    private final String[] values;
+    private final int mask;
+
+    /**
+     * The table is sized by all names including defaults, so it is at most half full and lookups of missing keys end.
+     */
+    ValueTable(Properties properties, List<Escape> escapes) {
+        final Set<String> names = properties.stringPropertyNames();
+        int capacity = 16;
+        while (capacity < 2 * names.size()) {
+            capacity *= 2;
+        }
+        keys = new String[capacity];
+        values = new String[capacity];
+        mask = capacity - 1;
+        for (String key : names) {
+            put(key, escape(properties.getProperty(key), escapes));
+        }
+    }
+
+    private static String escape(String value, List<Escape> escapes) {
+        String s = value;
+        if (escapes != null) {
+            for (Escape escape : escapes) {
+                s = s.replace(escape.getFrom(), escape.getTo());
+            }
+        }
+        return s;
+    }
+
+    private void put(String key, String value) {
+        int i = index(key);
+        while (keys[i] != null && !keys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * @return the escaped value or null if the key is unknown.
+     */
+    String get(String key) {
+        int i = index(key);
+        String k;
+        while ((k = keys[i]) != null) {
+            if (k.equals(key)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private int index(String key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,25 @@
+package stni.languager.crawl;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A {@link CrawlAction} that can work on large files in overlapping windows, so they need not be held in memory.
+ * Files of at least {@link CrawlPattern#getWindowThreshold()} bytes are given to {@link #doWindow} instead of being read at once.
+ */
+public interface WindowedCrawlAction extends CrawlAction {
+    /**
+     * @return if large files can be given to {@link #doWindow}. Subclasses needing the whole content return false.
+     */
+    boolean supportsWindows();
+
+    /**
+     * Called for every window of a large file.
+     * Consecutive windows overlap by {@link CrawlPattern#getMaxMatchLength()} chars.
+     *
+     * @param window The content of the window. It is only valid during this call and must not be kept.
+     * @param offset The position of the window in the file.
+     * @param last   If this is the last window of the file.
+     */
+    void doWindow(File basedir, File file, CharSequence window, long offset, boolean last, CrawlPattern pattern) throws IOException;
+}
@@ -4,7 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static stni.languager.Message.Status.FOUND;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
@@ -17,6 +20,7 @@ import java.util.SortedMap;
 import org.junit.Test;
 
 import stni.languager.crawl.CrawlPattern;
+import stni.languager.crawl.CrawlPipeline;
 import stni.languager.crawl.FindRegexAction;
 
 /**
@@ -104,6 +108,86 @@ public class KeyExtractorTest extends BaseTest {
         assertEquals(0, negatives.size());
     }
 
+    @Test
+    public void testUnmessagedInOnePipeline() throws Exception {
+        final KeyExtractor extractor = new KeyExtractor();
+        final CrawlPipeline pipeline = extractor.createPipeline();
+        extractor.extractFromFiles(pipeline,
+                new CrawlPattern(base, "*.js", null, "utf-8"),
+                "/\\*-(.*?)\\*/'(.*?)'", EnumSet.of(FindRegexAction.Flag.WITH_EMPTY));
+        extractor.extractNegativesFromFiles(pipeline,
+                new CrawlPattern(base, "*.js", null, "utf-8"),
+                "'(.*?)'", null, EnumSet.of(FindRegexAction.Flag.TRIM));
+        pipeline.crawl();
+
+        final Collection<FindResult> negatives = extractor.getNegatives();
+        assertEquals(1, negatives.size());
+        assertEquals("unmessaged", negatives.iterator().next().getFindings().get(0));
+        assertEquals(new Message("key", FOUND, "messaged"), extractor.getMessages().get("key"));
+    }
+
+    @Test
+    public void testNegativeInsideLaterFoundResult() throws Exception {
+        final File dir = fromBaseDir("target/inner");
+        dir.mkdirs();
+        final File file = new File(dir, "inner.html");
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        out.write("<p title='outer'>a <msg key='k'>inner</msg> text</p> <msg key='late'>z</msg> <b>free</b>");
+        out.close();
+        final KeyExtractor extractor = new KeyExtractor();
+        final CrawlPipeline pipeline = extractor.createPipeline();
+        final CrawlPattern pattern = new CrawlPattern(dir, "*.html", null, "utf-8");
+        extractor.extractFromFiles(pipeline, pattern, "<msg key='(.*?)'>(.*?)</msg>", null);
+        extractor.extractFromFiles(pipeline, pattern, "<p title='(.*?)'>(.*?)</p>", null);
+        extractor.extractNegativesFromFiles(pipeline, pattern, ">([^<]*)<", null, EnumSet.of(FindRegexAction.Flag.TRIM));
+        pipeline.crawl();
+
+        final Collection<FindResult> negatives = extractor.getNegatives();
+        assertEquals(1, negatives.size());
+        assertEquals("free", negatives.iterator().next().getFindings().get(0));
+    }
+
+    /**
+     * Every key and text is found by both searches, in one file by the first and in the other by the second,
+     * so the results of either file order differ from the search order.
+     */
+    @Test
+    public void testSearchOrderInOnePipeline() throws Exception {
+        final File dir = fromBaseDir("target/order");
+        dir.mkdirs();
+        write(new File(dir, "a.html"), "<msg key='k1'>first</msg> <b key='k2'>second</b> <i>t1</i> <u>t2</u>");
+        write(new File(dir, "b.html"), "<b key='k1'>second</b> <msg key='k2'>first</msg> <u>t1</u> <i>t2</i>");
+        final KeyExtractor extractor = new KeyExtractor();
+        final CrawlPipeline pipeline = extractor.createPipeline();
+        final CrawlPattern pattern = new CrawlPattern(dir, "*.html", null, "utf-8");
+        extractor.extractFromFiles(pipeline, pattern, "<msg key='(.*?)'>(.*?)</msg>", null);
+        extractor.extractNegativesFromFiles(pipeline, pattern, "<i>(.*?)</i>", null, null);
+        extractor.extractFromFiles(pipeline, pattern, "<b key='(.*?)'>(.*?)</b>", null);
+        extractor.extractNegativesFromFiles(pipeline, pattern, "<u>(.*?)</u>", null, null);
+        pipeline.crawl();
+
+        for (String key : Arrays.asList("k1", "k2")) {
+            final Message message = extractor.getMessages().get(key);
+            assertEquals("first", message.getDefaultValue());
+            assertEquals(2, message.getOccurrences().size());
+            assertEquals(key.equals("k1") ? "a.html" : "b.html", message.getOccurrences().get(0).getSource().getName());
+        }
+        assertEquals(2, extractor.getSameKeyResults().size());
+        for (KeyExtractor.FindResultPair sameKey : extractor.getSameKeyResults()) {
+            assertEquals("first", extractor.valueOf(sameKey.getResult1()));
+            assertEquals("second", extractor.valueOf(sameKey.getResult2()));
+        }
+        final Iterator<FindResult> negatives = extractor.getNegatives().iterator();
+        assertEquals("t2", negatives.next().getFindings().get(0));
+        assertEquals("t1", negatives.next().getFindings().get(0));
+    }
+
+    private void write(File file, String content) throws IOException {
+        final Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        out.write(content);
+        out.close();
+    }
+
     @Test
     public void testUnmessagedTextJs() throws Exception {
         final KeyExtractor extractor = new KeyExtractor();
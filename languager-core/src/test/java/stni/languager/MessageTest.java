@@ -0,0 +1,132 @@
+package stni.languager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MessageTest {
+    @Test
+    public void valuesByLanguageIndex() {
+        Languages languages = new Languages();
+        Message message = new Message("key", Message.Status.FOUND, "default", languages);
+        message.addValue("de", "Wert");
+        message.addValue("fr", "valeur");
+        assertEquals(2, languages.size());
+        assertEquals("Wert", message.getValue(languages.indexOf("de")));
+        assertNull(message.getValue(languages.indexOf("xx")));
+        assertNull(message.getValue(-1));
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("de", "Wert");
+        expected.put("fr", "valeur");
+        assertEquals(expected, message.getValues());
+        assertFalse(message.getValues().containsKey("it"));
+
+        Message other = new Message("key", Message.Status.FOUND, "default", languages);
+        other.getValues().put("fr", "valeur");
+        other.setValue(languages.indexOf("de"), "Wert");
+        assertEquals(message, other);
+        assertEquals(message.hashCode(), other.hashCode());
+
+        Message ownTable = new Message("key", Message.Status.FOUND, "default");
+        ownTable.addValue("fr", "valeur");
+        ownTable.addValue("de", "Wert");
+        assertEquals(message, ownTable);
+        assertEquals(message.hashCode(), ownTable.hashCode());
+
+        Message transformed = message.transformed(new Message.Transformer() {
+            public String transform(String lang, String value) {
+                return lang + ":" + value;
+            }
+        });
+        assertEquals(":default", transformed.getDefaultValue());
+        assertEquals("fr:valeur", transformed.getValues().get("fr"));
+    }
+
+    @Test
+    public void modifiableValues() {
+        Message message = new Message("key", Message.Status.FOUND, null);
+        message.addValue("de", "Wert");
+        message.addValue("fr", "valeur");
+        message.addValue("it", "valore");
+
+        assertEquals("valeur", message.getValues().remove("fr"));
+        assertFalse(message.getValues().containsKey("fr"));
+        assertEquals(2, message.getValues().size());
+
+        for (Map.Entry<String, String> entry : message.getValues().entrySet()) {
+            entry.setValue(entry.getValue().toUpperCase());
+        }
+        assertEquals("WERT", message.getValues().get("de"));
+
+        Iterator<String> langs = message.getValues().keySet().iterator();
+        assertEquals("de", langs.next());
+        langs.remove();
+        assertEquals("VALORE", message.getValues().values().iterator().next());
+
+        message.getValues().clear();
+        assertTrue(message.getValues().isEmpty());
+    }
+
+    @Test
+    public void nullValuesAreKept() {
+        Message message = new Message("key", Message.Status.FOUND, null);
+        message.addValue("de", "Wert");
+        assertEquals("Wert", message.getValues().put("de", null));
+        message.getValues().put("fr", null);
+        assertTrue(message.getValues().containsKey("de"));
+        assertNull(message.getValues().get("de"));
+        assertEquals(2, message.getValues().size());
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("de", null);
+        expected.put("fr", null);
+        assertEquals(expected, message.getValues());
+        assertEquals(expected.hashCode(), message.getValues().hashCode());
+
+        Message other = new Message("key", Message.Status.FOUND, null);
+        other.addValue("de", null);
+        assertFalse(message.equals(other));
+        other.addValue("fr", null);
+        assertEquals(message, other);
+
+        message.getValues().remove("de");
+        assertFalse(message.getValues().containsKey("de"));
+    }
+
+    @Test
+    public void modifiableOccurrences() {
+        Message message = new Message("key", Message.Status.FOUND, null);
+        message.addOccurrence(new SourcePosition(new File("a.html"), 1, 2, 1, 2));
+        List<SourcePosition> occurrences = message.getOccurrences();
+        occurrences.add(new SourcePosition(new File("b.html"), 3, 4, 2, 3));
+        occurrences.add(0, new SourcePosition(new File("c.html"), 5, 6, 3, 4));
+        assertEquals(3, message.getOccurrences().size());
+        assertEquals(new File("c.html"), message.getOccurrences().get(0).getSource());
+        assertEquals(new File("a.html"), message.getOccurrences().get(1).getSource());
+        assertEquals(3, message.getOccurrences().get(2).getStart());
+
+        assertEquals(new File("c.html"), occurrences.remove(0).getSource());
+        occurrences.set(1, new SourcePosition(new File("a.html"), 7, 8, 4, 5));
+        assertEquals(2, message.getOccurrenceStore().size());
+        assertEquals(new File("a.html"), message.getOccurrenceStore().getSource(0));
+        assertEquals(7, message.getOccurrenceStore().getStart(1));
+
+        occurrences.clear();
+        assertTrue(message.getOccurrences().isEmpty());
+        occurrences.add(new SourcePosition(new File("d.html"), 9, 10, 5, 6));
+        assertEquals(new File("d.html"), message.getOccurrences().get(0).getSource());
+    }
+}
@@ -0,0 +1,63 @@
+package stni.languager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class OccurrencesTest {
+    @Test
+    public void columnsAndView() {
+        Occurrences occurrences = new Occurrences();
+        for (int i = 0; i < 40; i++) {
+            occurrences.add(new SourcePosition(new File("file" + (i % 20) + ".html"), i, i + 5, i + 1, i + 2));
+        }
+        assertEquals(40, occurrences.size());
+        assertEquals(new File("file3.html"), occurrences.getSource(23));
+        assertSame(occurrences.getSource(3), occurrences.getSource(23));
+
+        List<SourcePosition> view = occurrences.asList();
+        assertEquals(40, view.size());
+        SourcePosition pos = view.get(37);
+        assertEquals(new File("file17.html"), pos.getSource());
+        assertEquals(37, pos.getStart());
+        assertEquals(42, pos.getEnd());
+        assertEquals(38, pos.getLine());
+        assertEquals(39, pos.getColumn());
+
+        Occurrences copy = new Occurrences();
+        copy.add(new SourcePosition(new File("other.html"), 0, 1, 1, 1));
+        copy.addAll(occurrences);
+        assertEquals(41, copy.size());
+        assertEquals(occurrences.getSource(39), copy.getSource(40));
+        assertEquals(occurrences.getColumn(39), copy.getColumn(40));
+    }
+
+    /**
+     * An ArrayList with one SourcePosition needs about 110 bytes.
+     */
+    @Test
+    public void footprint() {
+        Occurrences occurrences = new Occurrences();
+        occurrences.add(new SourcePosition(new File("a.html"), 1, 2, 3, 4));
+        assertEquals(56, occurrences.getFootprint());
+        assertEquals(4, occurrences.getColumn(0));
+
+        occurrences.add(new SourcePosition(new File("a.html"), 5, 6, 7, 8));
+        occurrences.add(new SourcePosition(new File("a.html"), 9, 10, 11, 12));
+        assertEquals(56 + 56, occurrences.getFootprint());
+        assertEquals(new File("a.html"), occurrences.getSource(2));
+        assertEquals(11, occurrences.getLine(2));
+
+        occurrences.add(new SourcePosition(new File("b.html"), 13, 14, 15, 16));
+        assertEquals(56 + 96 + 24, occurrences.getFootprint());
+        assertEquals(new File("b.html"), occurrences.getSource(3));
+        assertEquals(new File("a.html"), occurrences.getSource(1));
+    }
+}
@@ -0,0 +1,95 @@
+package stni.languager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import stni.languager.crawl.CrawlPattern;
+import stni.languager.crawl.FindRegexAction;
+
+/**
+ *
+ */
+public class SymbolTableTest extends BaseTest {
+    @Test
+    public void internCountsDuplicates() {
+        SymbolTable symbols = new SymbolTable();
+        String first = new String("value");
+        assertSame(first, symbols.intern(first));
+        assertSame(first, symbols.intern(new String("value")));
+        assertSame(first, symbols.intern(first));
+        assertNull(symbols.intern(null));
+        assertEquals(1, symbols.getSize());
+        assertEquals(1, symbols.getDuplicates());
+        assertEquals(5, symbols.getDuplicateChars());
+    }
+
+    @Test
+    public void savedBytesByCoding() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.intern("gr\u00fcn");
+        symbols.intern(new String("gr\u00fcn"));
+        assertEquals(40 + 4 - 40, symbols.getSavedBytes());
+        symbols.intern("\u20ac");
+        symbols.intern(new String("\u20ac"));
+        assertEquals(40 + 4 + 40 + 2 - 2 * 40, symbols.getSavedBytes());
+        symbols.intern("unique");
+        assertEquals(6 - 40, symbols.getSavedBytes());
+    }
+
+    @Test
+    public void clearKeepsStatistics() {
+        SymbolTable symbols = new SymbolTable();
+        String first = new String("value");
+        symbols.intern(first);
+        symbols.intern(new String("value"));
+        symbols.clear();
+        assertEquals(0, symbols.getSize());
+        assertEquals(1, symbols.getEntries());
+        assertEquals(1, symbols.getDuplicates());
+        assertEquals(40 + 5 - 40, symbols.getSavedBytes());
+        assertNotSame(first, symbols.intern(new String("value")));
+        assertEquals(2, symbols.getEntries());
+    }
+
+    @Test
+    public void transformedValuesAreNotCounted() {
+        SymbolTable symbols = new SymbolTable();
+        Message message = new Message("key", Message.Status.FOUND, symbols.intern("default"));
+        message.addValue("de", symbols.intern("Wert"));
+        Message transformed = message.transformed(new NewlineRemover(), symbols);
+        assertSame(message.getDefaultValue(), transformed.getDefaultValue());
+        assertSame(message.getValues().get("de"), transformed.getValues().get("de"));
+        assertEquals(0, symbols.getDuplicates());
+        assertEquals(-2 * 40, symbols.getSavedBytes());
+    }
+
+    @Test
+    public void csvFieldsAreShared() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        CsvReader in = new CsvReader(new StringReader("a;\"b\";a\nb;a"), ';', symbols);
+        List<String> line1 = in.readLine();
+        List<String> line2 = in.readLine();
+        assertSame(line1.get(0), line1.get(2));
+        assertSame(line1.get(0), line2.get(1));
+        assertSame(line1.get(1), line2.get(0));
+        assertEquals(3, symbols.getDuplicates());
+    }
+
+    @Test
+    public void extractedKeysAreShared() throws IOException {
+        KeyExtractor extractor = new KeyExtractor();
+        extractor.extractFromFiles(new CrawlPattern(fromTestDir(""), "*.html", null, "utf-8"),
+                "<msg key='(.*?)'>(.*?)</msg>", EnumSet.of(FindRegexAction.Flag.WITH_EMPTY));
+        final KeyExtractor.FindResultPair sameKey = extractor.getSameKeyResults().get(0);
+        assertSame(extractor.keyOf(sameKey.getResult1()), extractor.keyOf(sameKey.getResult2()));
+    }
+}
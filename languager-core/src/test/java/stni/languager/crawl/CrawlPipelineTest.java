@@ -0,0 +1,152 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+import stni.languager.FindResult;
+
+/**
+ *
+ */
+public class CrawlPipelineTest extends BaseTest {
+    private static class RecordingAction implements CrawlAction {
+        private final List<File> files = new ArrayList<File>();
+
+        public void action(File basedir, File file, CrawlPattern pattern) {
+            files.add(file);
+        }
+    }
+
+    @Test
+    public void skipBinaryAndOversized() throws Exception {
+        File base = new File(fromBaseDir("target"), "skip");
+        base.mkdirs();
+        write(new File(base, "text.html"), "<msg key='text'>a</msg>".getBytes("utf-8"));
+        write(new File(base, "nul.html"), "<msg key='nul'>\u0000</msg>".getBytes("utf-8"));
+        write(new File(base, "latin1.html"), "<msg key='latin1'>\u00e4</msg>".getBytes("iso-8859-1"));
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            large.append("<msg key='large").append(i).append("'>b</msg>");
+        }
+        write(new File(base, "large.html"), large.toString().getBytes("utf-8"));
+
+        CrawlPattern pattern = new CrawlPattern(base, "*.html", null, "utf-8");
+        pattern.setMaxFileSize(1000);
+        FindRegexAction find = new FindRegexAction("<msg key='(.*?)'>", null, null);
+        RecordingAction recording = new RecordingAction();
+        CrawlPipeline pipeline = new CrawlPipeline().add(pattern, find).add(pattern, recording);
+        pipeline.crawl();
+
+        List<String> found = new ArrayList<String>();
+        for (FindResult result : find.getResults()) {
+            found.add(result.getFindings().get(0));
+        }
+        Collections.sort(found);
+        assertEquals(Arrays.asList("latin1", "text"), found);
+        assertEquals(4, recording.files.size());
+        assertEquals(1, pipeline.getStatistics().getBinaryFiles());
+        assertEquals(new File(base, "nul.html").length(), pipeline.getStatistics().getBinaryBytes());
+        assertEquals(1, pipeline.getStatistics().getOversizedFiles());
+        assertEquals(new File(base, "large.html").length(), pipeline.getStatistics().getOversizedBytes());
+    }
+
+    @Test
+    public void skippedFilesAreCountedOnce() throws Exception {
+        File base = new File(fromBaseDir("target"), "skip-once");
+        new File(base, "sub").mkdirs();
+        write(new File(base, "sub/nul.html"), "<msg key='nul'>\u0000</msg>".getBytes("utf-8"));
+        write(new File(base, "sub/nul.txt"), "<msg key='nul'>\u0000</msg>".getBytes("utf-8"));
+
+        CrawlPipeline pipeline = new CrawlPipeline()
+                .add(new CrawlPattern(base, "**/*.html", null, "utf-8"), new FindRegexAction("<msg key='(.*?)'>", null, null))
+                .add(new CrawlPattern(new File(base, "sub"), "*.html", null, "utf-8"), new FindRegexAction("<msg (.*?)>", null, null))
+                .add(new CrawlPattern(base, "**/*.txt", null, "utf-8"), new FindRegexAction("<msg key='(.*?)'>", null, null))
+                .add(new CrawlPattern(base, "**/*.txt", null, "utf-16le"), new FindRegexAction("<msg key='(.*?)'>", null, null));
+        pipeline.crawl();
+
+        assertEquals(1, pipeline.getStatistics().getBinaryFiles());
+        assertEquals(Arrays.asList(new File(base, "sub/nul.html").getAbsoluteFile()), absolute(pipeline.getStatistics().getSkippedFiles()));
+    }
+
+    private static List<File> absolute(List<File> files) {
+        final List<File> res = new ArrayList<File>();
+        for (File file : files) {
+            res.add(file.getAbsoluteFile());
+        }
+        return res;
+    }
+
+    @Test
+    public void profilePerDirectory() throws Exception {
+        File base = new File(fromBaseDir("target"), "profile");
+        new File(base, "sub").mkdirs();
+        write(new File(base, "root.html"), "<msg key='a'>a</msg>".getBytes("utf-8"));
+        write(new File(base, "sub/one.html"), "<msg key='b'>b</msg><msg key='c'>c</msg>".getBytes("utf-8"));
+        write(new File(base, "sub/two.html"), "nothing".getBytes("utf-8"));
+        write(new File(base, "sub/other.js"), "<msg key='d'>d</msg>".getBytes("utf-8"));
+
+        CrawlPattern pattern = new CrawlPattern(base, "**/*.html", null, "utf-8");
+        CrawlPipeline pipeline = new CrawlPipeline(2)
+                .add(pattern, new FindRegexAction("<msg key='(.*?)'>", null, null))
+                .add(pattern, new FindRegexAction("<msg (.*?)>", null, null));
+        pipeline.crawl();
+
+        CrawlProfile.Counters root = pipeline.getProfile().counters(pattern, CrawlProfile.BASEDIR);
+        assertEquals(1, root.getFilesListed());
+        assertEquals(1, root.getFilesRead());
+        assertEquals(new File(base, "root.html").length(), root.getBytesDecoded());
+        assertEquals(2, root.getMatches());
+        CrawlProfile.Counters sub = pipeline.getProfile().counters(pattern, "sub");
+        assertEquals(2, sub.getFilesListed());
+        assertEquals(new File(base, "sub/one.html").length(), sub.getBytesDecoded());
+        assertEquals(4, sub.getMatches());
+        assertEquals(6, pipeline.getProfile().total(pattern).getMatches());
+
+        StringWriter json = new StringWriter();
+        pipeline.getProfile().writeJson(json);
+        assertTrue(json.toString().contains("\"includes\": \"**/*.html\""));
+        assertTrue(json.toString().contains("\"sub\": {\"filesListed\": 2, \"filesRead\": 2"));
+    }
+
+    private void write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+    }
+
+    @Test
+    public void sameFilesAsFileUtils() throws Exception {
+        File base = fromBaseDir("src");
+        assertSameFiles(base, null, null);
+        assertSameFiles(base, "**/*.java", null);
+        assertSameFiles(base, "**/*.java", "**/crawl/**");
+        assertSameFiles(base, "main/", "**/*Action*");
+        assertSameFiles(base, "test/resources/**/*.html, **/Base*", "**/*2*,inner*");
+        assertSameFiles(base, "*.java", null);
+        assertSameFiles(base, "", null);
+        assertSameFiles(base, "**/stni/**/*.*", "**/crawl/**,main/**/Csv*,**/test/resources/**");
+        assertSameFiles(base, "**", "**");
+        assertSameFiles(base, "t?st/**/*.j*a", "**/languager/*");
+        assertSameFiles(base, "**/languager/**/**/*.html", "test/**/resources/**/t*/**");
+    }
+
+    private void assertSameFiles(File base, String includes, String excludes) throws Exception {
+        CrawlPattern pattern = new CrawlPattern(base, includes, excludes, null);
+        RecordingAction action = new RecordingAction();
+        new FileCrawler(pattern).crawl(action);
+        assertEquals(FileUtils.getFiles(base, includes, excludes), action.files);
+    }
+}
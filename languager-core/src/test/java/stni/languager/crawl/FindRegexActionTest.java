@@ -1,8 +1,15 @@
 package stni.languager.crawl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -53,5 +60,150 @@ public class FindRegexActionTest extends BaseTest {
         assertEquals("default3", res.get(3).getFindings().get(0).trim());
     }
 
+    @Test
+    public void testWindowsSameAsWhole() throws Exception {
+        File file = File.createTempFile("large", ".html");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        for (int i = 0; i < 5000; i++) {
+            out.write("<p>line " + i + " \u00e4\u20ac\ud83d\ude00 <msg key='key" + i + "'>default\n" + i + "</msg>");
+            out.write(i % 7 == 0 ? "\n" : " ");
+        }
+        out.close();
+        CrawlPattern pattern = new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8");
+        List<FindResult> whole = new FileCrawler(pattern).crawl(new FindRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, null)).getResults();
+        pattern.setWindowThreshold(0);
+        pattern.setMaxMatchLength(100);
+        List<FindResult> windows = new FileCrawler(pattern).crawl(new FindRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, null)).getResults();
+        file.delete();
+        assertEquals(5000, whole.size());
+        assertSameResults(whole, windows);
+    }
+
+    @Test
+    public void testWindowsArePrefiltered() throws Exception {
+        File file = File.createTempFile("large", ".html");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        for (int i = 0; i < 1000; i++) {
+            out.write("<p>line " + i + "</p>\n");
+        }
+        out.close();
+        CrawlPattern pattern = new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8");
+        pattern.setWindowThreshold(0);
+        pattern.setMaxMatchLength(100);
+        final int[] windows = new int[1];
+        new FileCrawler(pattern).crawl(new FindRegexAction("<msg key='(.*?)'>", null, null) {
+            @Override
+            public void doWindow(File basedir, File file, CharSequence window, long offset, boolean last, CrawlPattern pattern) throws IOException {
+                windows[0]++;
+                super.doWindow(basedir, file, window, offset, last, pattern);
+            }
+        });
+        file.delete();
+        assertEquals(0, windows[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMaxMatchLength() {
+        new CrawlPattern(fromTestDir(""), "*.html", null, "utf-8").setMaxMatchLength(0);
+    }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testOverflowingMaxMatchLength() {
+        new CrawlPattern(fromTestDir(""), "*.html", null, "utf-8").setMaxMatchLength(Integer.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void testParallelKeepsOrder() throws Exception {
+        File base = fromTestDir("");
+        CrawlPattern pattern = new CrawlPattern(base, "*.html,*.js", null, "utf-8");
+        List<FindResult> sequential = new FileCrawler(pattern).crawl(new FindRegexAction(">(.*?)<", null, null)).getResults();
+        List<FindResult> parallel = new FileCrawler(pattern, 4).crawl(new FindRegexAction(">(.*?)<", null, null)).getResults();
+        assertSameResults(sequential, parallel);
+    }
+
+    @Test
+    public void testReadAheadKeepsResults() throws Exception {
+        CrawlPattern pattern = new CrawlPattern(fromTestDir(""), "*.html,*.js", null, "utf-8");
+        List<FindResult> plain = new FileCrawler(pattern).crawl(new FindRegexAction(">(.*?)<", null, null)).getResults();
+        for (int threads = 1; threads <= 3; threads += 2) {
+            List<FindResult> readAhead = new FileCrawler(pattern, threads).setIoThreads(8)
+                    .crawl(new FindRegexAction(">(.*?)<", null, null)).getResults();
+            assertSameResults(plain, readAhead);
+        }
+    }
+
+    @Test
+    public void testConsumerGetsResultsInOrder() throws Exception {
+        CrawlPattern pattern = new CrawlPattern(fromTestDir(""), "*.html,*.js", null, "utf-8");
+        List<FindResult> collected = new FileCrawler(pattern).crawl(new FindRegexAction(">(.*?)<", null, null)).getResults();
+        final List<FindResult> consumed = new ArrayList<FindResult>();
+        FindRegexAction action = new FindRegexAction(">(.*?)<", null, null);
+        action.setConsumer(new FindResultConsumer() {
+            public void found(FindResult result) {
+                consumed.add(result);
+            }
+        });
+        new FileCrawler(pattern, 4).crawl(action);
+        assertTrue(action.getResults().isEmpty());
+        assertSameResults(collected, consumed);
+    }
+
+    @Test
+    public void testStepBudget() throws Exception {
+        File file = File.createTempFile("backtrack", ".html");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        out.write("<msg key='k'>v</msg> aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+        out.close();
+        CrawlPattern pattern = new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8");
+        FindRegexAction action = new FindRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, null);
+        new FileCrawler(pattern).crawl(action);
+        assertTrue(action.getSteps() > 0);
+
+        pattern.setMatchStepBudget(100000);
+        try {
+            new FileCrawler(pattern).crawl(new FindRegexAction("(.*a){12}[bc]", null, null));
+            fail("catastrophic backtracking not aborted");
+        } catch (Exception e) {
+            Throwable cause = e;
+            while (!(cause instanceof IllegalStateException)) {
+                cause = cause.getCause();
+            }
+            assertTrue(cause.getMessage().contains("(.*a){12}[bc]"));
+            assertTrue(cause.getMessage().contains(file.getName()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testStepBudgetAllowsScanning() throws Exception {
+        File file = File.createTempFile("sparse", ".html");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        for (int i = 0; i < 20000; i++) {
+            out.write("<p>no message here</p>\n");
+        }
+        out.write("<msg key='k'>v</msg>");
+        out.close();
+        CrawlPattern pattern = new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8");
+        pattern.setMatchStepBudget(1000);
+        FindRegexAction action = new FindRegexAction("<msg key='(.*?)'>", null, null);
+        List<FindResult> res = new FileCrawler(pattern).crawl(action).getResults();
+        file.delete();
+        assertEquals(1, res.size());
+        assertTrue(action.getSteps() > 1000);
+    }
+
+    private void assertSameResults(List<FindResult> expected, List<FindResult> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            final SourcePosition expectedPos = expected.get(i).getPosition();
+            final SourcePosition actualPos = actual.get(i).getPosition();
+            assertEquals(expectedPos.getSource(), actualPos.getSource());
+            assertEquals(expectedPos.getStart(), actualPos.getStart());
+            assertEquals(expectedPos.getEnd(), actualPos.getEnd());
+            assertEquals(expectedPos.getLine(), actualPos.getLine());
+            assertEquals(expectedPos.getColumn(), actualPos.getColumn());
+            assertEquals(expected.get(i).getFindings(), actual.get(i).getFindings());
+        }
+    }
 }
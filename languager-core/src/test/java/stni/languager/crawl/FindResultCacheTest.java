@@ -0,0 +1,149 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+import stni.languager.FindResult;
+
+/**
+ *
+ */
+public class FindResultCacheTest extends BaseTest {
+    private static final String REGEX = "<msg key='(.*?)'>(.*?)</msg>";
+
+    @Test
+    public void reuseUnchanged() throws Exception {
+        File base = fromTestDir("");
+        File cacheFile = File.createTempFile("cache", "bin");
+        cacheFile.delete();
+        CrawlPattern pattern = new CrawlPattern(base, "test*.html", null, "utf-8");
+
+        FindResultCache cache = FindResultCache.load(cacheFile);
+        List<FindResult> first = new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache)).getResults();
+        assertEquals(0, cache.getHits());
+        cache.save();
+
+        cache = FindResultCache.load(cacheFile);
+        List<FindResult> second = new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache)).getResults();
+        assertEquals(0, cache.getMisses());
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getPosition().toString(), second.get(i).getPosition().toString());
+            assertEquals(first.get(i).getFindings(), second.get(i).getFindings());
+        }
+
+        cache = FindResultCache.load(cacheFile);
+        new FileCrawler(pattern).crawl(new FindRegexAction(">(.*?)<", null, null, cache));
+        assertEquals(0, cache.getHits());
+        cacheFile.delete();
+    }
+
+    @Test
+    public void unchangedFilesAreNotReadAhead() throws Exception {
+        File base = fromTestDir("");
+        File file = fromTestDir("test.html");
+        File cacheFile = File.createTempFile("cache", "bin");
+        cacheFile.delete();
+        CrawlPattern pattern = new CrawlPattern(base, "test*.html", null, "utf-8");
+
+        FindResultCache cache = FindResultCache.load(cacheFile);
+        assertTrue(new FindRegexAction(REGEX, null, null, cache).mayReadAtOnce(file, file.length(), pattern));
+        new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache));
+        cache.save();
+
+        cache = FindResultCache.load(cacheFile);
+        assertFalse(new FindRegexAction(REGEX, null, null, cache).mayReadAtOnce(file, file.length(), pattern));
+        new FileCrawler(pattern).setIoThreads(4).crawl(new FindRegexAction(REGEX, null, null, cache));
+        assertEquals(0, cache.getMisses());
+        cacheFile.delete();
+    }
+
+    @Test
+    public void hashOfReadBytesMatchesFile() throws Exception {
+        File dir = File.createTempFile("cached", "");
+        dir.delete();
+        dir.mkdirs();
+        File file = new File(dir, "touched.html");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        out.write("<p><msg key='a'>A</msg></p>");
+        out.close();
+        File cacheFile = new File(dir, "cache.bin");
+        CrawlPattern pattern = new CrawlPattern(dir, "*.html", null, "utf-8");
+
+        FindResultCache cache = FindResultCache.load(cacheFile);
+        new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache));
+        cache.save();
+        file.setLastModified(file.lastModified() - 10000);
+
+        cache = FindResultCache.load(cacheFile);
+        List<FindResult> res = new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache)).getResults();
+        assertEquals(1, cache.getHits());
+        assertEquals(1, res.size());
+        file.delete();
+        cacheFile.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void lowerMaxFileSizeSkipsCachedFiles() throws Exception {
+        File base = fromTestDir("");
+        File cacheFile = File.createTempFile("cache", "bin");
+        cacheFile.delete();
+        CrawlPattern pattern = new CrawlPattern(base, "test*.html", null, "utf-8");
+
+        FindResultCache cache = FindResultCache.load(cacheFile);
+        assertTrue(new FileCrawler(pattern).crawl(new FindRegexAction(REGEX, null, null, cache)).getResults().size() > 0);
+        cache.save();
+
+        cache = FindResultCache.load(cacheFile);
+        pattern.setMaxFileSize(10);
+        CrawlPipeline pipeline = new CrawlPipeline();
+        FindRegexAction action = new FindRegexAction(REGEX, null, null, cache);
+        pipeline.add(pattern, action).crawl();
+        assertEquals(0, action.getResults().size());
+        assertEquals(0, cache.getHits());
+        assertTrue(pipeline.getStatistics().getOversizedFiles() > 0);
+        cacheFile.delete();
+    }
+
+    @Test
+    public void fileChangedAfterReadingIsNotReused() throws Exception {
+        File file = File.createTempFile("changed", ".html");
+        File cacheFile = File.createTempFile("cache", "bin");
+        cacheFile.delete();
+        write(file, "<msg key='a'>A</msg>");
+        file.setLastModified(file.lastModified() - 10000);
+
+        FindResultCache cache = FindResultCache.load(cacheFile);
+        FindResultCache.Version version = new FindResultCache.Version(file);
+        version.hash(ByteBuffer.wrap("<msg key='a'>A</msg>".getBytes("utf-8")));
+        write(file, "<msg key='b'>B</msg>");
+        cache.store("signature", file, version, Collections.<FindResult>emptyList());
+        cache.save();
+
+        cache = FindResultCache.load(cacheFile);
+        assertNull(cache.lookup("signature", file));
+        file.delete();
+        cacheFile.delete();
+    }
+
+    private void write(File file, String content) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "utf-8");
+        out.write(content);
+        out.close();
+    }
+}
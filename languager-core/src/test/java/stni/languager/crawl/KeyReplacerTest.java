@@ -0,0 +1,54 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+
+/**
+ *
+ */
+public class KeyReplacerTest extends BaseTest {
+    @Test
+    public void sameAsReplacingOneByOne() {
+        Properties props = new Properties();
+        for (int i = 0; i < 200; i++) {
+            props.setProperty("${key" + i + "}", "value " + i);
+        }
+        KeyReplacer replacer = new KeyReplacer(props);
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 100; i++) {
+                text.append(random.nextBoolean() ? "${key" + random.nextInt(250) + "}" : "x${ke}$");
+            }
+            String expected = text.toString();
+            for (Map.Entry<Object, Object> prop : props.entrySet()) {
+                expected = expected.replace((String) prop.getKey(), (String) prop.getValue());
+            }
+            assertEquals(expected, replacer.replace(text));
+        }
+    }
+
+    @Test
+    public void leftmostLongest() {
+        Map<String, String> keys = new LinkedHashMap<String, String>();
+        keys.put("ab", "1");
+        keys.put("abc", "2");
+        keys.put("bcd", "3");
+        keys.put("c", "4");
+        keys.put("", "5");
+        KeyReplacer replacer = new KeyReplacer(keys);
+        assertEquals("2d", replacer.replace("abcd"));
+        assertEquals("x3", replacer.replace("xbcd"));
+        assertEquals("1x4b", replacer.replace("abxcb"));
+        assertEquals("", replacer.replace(""));
+        assertEquals("xyz", new KeyReplacer(new Properties()).replace("xyz"));
+    }
+}
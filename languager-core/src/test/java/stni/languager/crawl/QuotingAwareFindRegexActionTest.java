@@ -0,0 +1,40 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+import stni.languager.FindResult;
+
+/**
+ *
+ */
+public class QuotingAwareFindRegexActionTest extends BaseTest {
+    @Test
+    public void insideAndOutsideOfTags() throws Exception {
+        File file = File.createTempFile("tags", ".html");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("<a title='1'>title='2' <b\ntitle='3'>title='4'<br>title='5' <i title='6'".getBytes("utf-8"));
+        out.close();
+        CrawlPattern pattern = new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8");
+        assertEquals("[1, 3, 6]", findings(new FileCrawler(pattern).crawl(
+                new QuotingAwareFindRegexAction("title='(.*?)'", null, null, null, true)).getResults()));
+        assertEquals("[2, 4, 5]", findings(new FileCrawler(pattern).crawl(
+                new QuotingAwareFindRegexAction("title='(.*?)'", null, null, null, false)).getResults()));
+        file.delete();
+    }
+
+    private String findings(List<FindResult> results) {
+        List<String> findings = new ArrayList<String>();
+        for (FindResult result : results) {
+            findings.add(result.getFindings().get(0));
+        }
+        return findings.toString();
+    }
+}
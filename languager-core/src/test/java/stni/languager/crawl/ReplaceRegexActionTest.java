@@ -9,8 +9,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  *
@@ -64,6 +67,72 @@ public class ReplaceRegexActionTest extends BaseTest {
         assertFileEquals(new File(base, "test_expected_parameter.html"), new File(target, "de/parameter.html"));
     }
 
+    @Test
+    public void severalLanguagesInOnePass() throws IOException {
+        File base = fromTestDir("");
+        File target = fromBaseDir("target/multi");
+        new PropertiesWriter(',').write(new File(base, "existing.csv"), "utf-8", fromBaseDir("target"), "msg");
+
+        final Properties de = new Properties();
+        de.load(new FileInputStream(fromBaseDir("target/msg_de.properties")));
+        final Properties en = new Properties();
+        en.load(new FileInputStream(fromBaseDir("target/msg_en.properties")));
+
+        List<ReplaceRegexActionParameter> parameters = Arrays.asList(
+                new ReplaceRegexActionParameter(new File(target, "de"), "$1", null, null, de, null),
+                new ReplaceRegexActionParameter(new File(target, "en"), "($1)", null, null, en, null));
+        FileCrawler crawler = new FileCrawler(new CrawlPattern(base, "*.html", null, "utf-8"));
+        TargetWriter writer = new TargetWriter();
+        crawler.crawl(new ReplaceRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, parameters, writer));
+        assertFileEquals(new File(base, "test_expected_de.html"), new File(target, "de/test.html"));
+        assertFileEquals(new File(base, "test_expected_en.html"), new File(target, "en/test.html"));
+
+        TargetWriter unchanged = new TargetWriter();
+        crawler.crawl(new ReplaceRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, parameters, unchanged));
+        Assert.assertEquals(0, unchanged.getWritten());
+        Assert.assertEquals(writer.getWritten() + writer.getSkipped(), unchanged.getSkipped());
+    }
+
+    @Test
+    public void writeBehind() throws IOException {
+        File base = fromTestDir("");
+        File target = new File(fromBaseDir("target"), "replaced-behind");
+        new PropertiesWriter(',').write(new File(base, "existing.csv"), "utf-8", fromBaseDir("target"), "msg");
+        final Properties de = new Properties();
+        de.load(new FileInputStream(fromBaseDir("target/msg_de.properties")));
+        List<ReplaceRegexActionParameter> parameters = Arrays.asList(
+                new ReplaceRegexActionParameter(new File(target, "de"), "$1", null, null, de, null));
+        TargetWriter writer = new TargetWriter(2, 16);
+        new FileCrawler(new CrawlPattern(base, "*.html", null, "utf-8"), 2)
+                .crawl(new ReplaceRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, parameters, writer));
+        writer.close();
+        assertFileEquals(new File(base, "test_expected_de.html"), new File(target, "de/test.html"));
+        Assert.assertTrue(writer.getWritten() + writer.getSkipped() > 1);
+
+        TargetWriter failing = new TargetWriter(1, 16);
+        failing.write(new File(target, "missing/dir/file.html"), "content", "utf-8");
+        try {
+            failing.close();
+            Assert.fail("failed write not reported");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void appendReplacementLikeMatcher() {
+        Matcher m = Pattern.compile("(?<name>a)(b)?(c)").matcher("xacy");
+        m.find();
+        for (String replacement : new String[]{"$1-$2-$3", "\\$1\\$", "${name}$10", "$31"}) {
+            StringBuffer expected = new StringBuffer();
+            m.appendReplacement(expected, replacement);
+            StringBuilder actual = new StringBuilder("x");
+            ReplaceRegexAction.appendReplacement(actual, m, replacement);
+            Assert.assertEquals(expected.toString(), actual.toString());
+            m.reset().find();
+        }
+    }
+
     private void assertFileEquals(File expected, File toTest) throws IOException {
         if (!fileContent(expected).equals(fileContent(toTest))) {
             Assert.fail("File " + toTest + " is not equal to file " + expected);
@@ -0,0 +1,74 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+
+/**
+ *
+ */
+public class ReplacementTemplateTest extends BaseTest {
+    private static final Pattern MSG = Pattern.compile("<msg key='(.*?)'(?:\\s*params='(.*?)')?>(.*?)</msg>");
+
+    @Test
+    public void sameAsReplacingStrings() {
+        Properties props = new Properties();
+        props.setProperty("key", "1{}2{}3{}4");
+        props.setProperty("amp", "a&b{}");
+        String[] texts = {
+                "<msg key='key'>x</msg>", "<msg key='key' params='a,b,c'>x</msg>", "<msg key='key' params='a,,b,,'>x</msg>",
+                "<msg key='key' params=',a'>x</msg>", "<msg key='key' params=','>x</msg>", "<msg key='amp' params='p'>x</msg>",
+                "<msg key='unknown' params='p'>x</msg>"};
+        for (String separator : new String[]{null, ",", "\\s*,\\s*"}) {
+            for (String replacement : new String[]{"$1", "[$1|$2|$12]{}", "{}"}) {
+                ReplacementTemplate template = new ReplacementTemplate(replacement, "{}", separator, props,
+                        Arrays.asList(new Escape("&", "&amp;")));
+                for (String text : texts) {
+                    Matcher m = MSG.matcher(text);
+                    m.find();
+                    StringBuilder s = new StringBuilder();
+                    template.render(m, s);
+                    assertEquals(text + " " + replacement + " " + separator, replaceStrings(m, replacement, separator, props), s.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void longMarker() {
+        Properties props = new Properties();
+        props.setProperty("key", "a[[p]]b[[p]]c");
+        Matcher m = MSG.matcher("<msg key='key' params='1,2'>x</msg>");
+        m.find();
+        StringBuilder s = new StringBuilder("before ");
+        new ReplacementTemplate("$1", "[[p]]", ",", props, null).render(m, s);
+        assertEquals("before a1b2c", s.toString());
+    }
+
+    private String replaceStrings(Matcher m, String replacement, String separator, Properties props) {
+        String res = replacement.replace("$1", value(m, 1, props)).replace("$2", value(m, 2, props));
+        for (int i = 2; i < m.groupCount(); i++) {
+            String group = m.group(i);
+            for (String parameter : group == null ? new String[]{""} : separator == null ? new String[]{group} : group.split(separator)) {
+                int pos = res.indexOf("{}");
+                if (pos < 0) {
+                    return res;
+                }
+                res = res.substring(0, pos) + parameter + res.substring(pos + 2);
+            }
+        }
+        return res;
+    }
+
+    private String value(Matcher m, int group, Properties props) {
+        String s = m.group(group) == null ? null : props.getProperty(m.group(group));
+        return s == null ? "" : s.replace("&", "&amp;");
+    }
+}
@@ -0,0 +1,67 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+
+/**
+ *
+ */
+public class RequiredLiteralTest extends BaseTest {
+    @Test
+    public void derive() {
+        assertEquals("<msg key='", RequiredLiteral.of("<msg key='(.*?)'>(.*?)</msg>").getLiteral());
+        assertEquals("<spring:message", RequiredLiteral.of("<spring:messages? code=\"(.*?)\"").getLiteral());
+        assertEquals("msg(", RequiredLiteral.of("\\bmsg\\(\\s*'(.*?)'").getLiteral());
+        assertEquals("ab", RequiredLiteral.of("xa{2,3}ab+c?(.)").getLiteral());
+        assertEquals(">", RequiredLiteral.of(">(.*?)<").getLiteral());
+        assertNull(RequiredLiteral.of("a(b)|c"));
+        assertNull(RequiredLiteral.of("(?i)msg(.*)"));
+        assertNull(RequiredLiteral.of("[abc](.*)"));
+        assertEquals("msg", RequiredLiteral.of("(?:a|b)msg(.*)").getLiteral());
+        assertEquals("]x", RequiredLiteral.of("[^]a]]x(.)").getLiteral());
+    }
+
+    @Test
+    public void escapesWithArgument() {
+        assertNull(RequiredLiteral.of("\\u00e4(.*)"));
+        assertNull(RequiredLiteral.of("msg\\x28(.*)"));
+        assertNull(RequiredLiteral.of("msg\\x{28}(.*)"));
+        assertNull(RequiredLiteral.of("\\0101(.*)"));
+        assertNull(RequiredLiteral.of("\\pLabel(.)"));
+        assertNull(RequiredLiteral.of("\\P{Lu}abel(.)"));
+        assertNull(RequiredLiteral.of("(?<q>')(.*)\\k<q>"));
+        assertNull(RequiredLiteral.of("\\cJmsg(.)"));
+        assertNull(RequiredLiteral.of("\\N{LATIN SMALL LETTER A}(.)"));
+        assertNull(RequiredLiteral.of("(a)\\12(.)"));
+    }
+
+    @Test
+    public void nestedClassesAndFlags() {
+        assertNull(RequiredLiteral.of("[a[bc]]xyz(.)"));
+        assertNull(RequiredLiteral.of("[a-z&&[^b]]xyz(.)"));
+        assertNull(RequiredLiteral.of("foo(?i)bar(.)"));
+        assertNull(RequiredLiteral.of("foo(?i:x)bar(.)"));
+        assertNull(RequiredLiteral.of("foo(?-i)bar(.)"));
+    }
+
+    @Test
+    public void bytes() throws Exception {
+        RequiredLiteral literal = new RequiredLiteral("msg(");
+        assertTrue(literal.canCheckBytes("utf-8"));
+        assertTrue(literal.canCheckBytes("iso-8859-1"));
+        assertFalse(literal.canCheckBytes("utf-16"));
+        assertTrue(literal.mayBeContained(ByteBuffer.wrap("x ä msg('a')".getBytes("utf-8")), "utf-8"));
+        assertFalse(literal.mayBeContained(ByteBuffer.wrap("x ä msg'a'".getBytes("utf-8")), "utf-8"));
+        assertTrue(literal.mayBeContained(ByteBuffer.wrap("msg'a'".getBytes("utf-16")), "utf-16"));
+        assertTrue(literal.isContained("x msg("));
+        assertFalse(literal.isContained("x msg"));
+    }
+}
@@ -0,0 +1,143 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+import static stni.languager.crawl.FindRegexAction.Flag.TRIM;
+import static stni.languager.crawl.FindRegexAction.Flag.WITH_EMPTY;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+import stni.languager.FindResult;
+import stni.languager.SourcePosition;
+
+/**
+ *
+ */
+public class TemplateLexerActionTest extends BaseTest {
+    @Test
+    public void samePositionsAsRegex() throws Exception {
+        CrawlPattern pattern = new CrawlPattern(fromTestDir(""), "test*.html,inner.html", "*_expected_*", "utf-8");
+        TemplateLexerAction lexer = new FileCrawler(pattern).crawl(new TemplateLexerAction(null, null));
+        List<FindResult> regex = new FileCrawler(pattern).crawl(new FindRegexAction("<msg key='(.*?)'>(.*?)</msg>", null, EnumSet.of(WITH_EMPTY, TRIM))).getResults();
+        assertEquals(regex.size(), lexer.getResults().size());
+        for (int i = 0; i < regex.size(); i++) {
+            final SourcePosition expected = regex.get(i).getPosition();
+            final SourcePosition actual = lexer.getResults().get(i).getPosition();
+            assertEquals(expected.getSource(), actual.getSource());
+            assertEquals(expected.getStart(), actual.getStart());
+            assertEquals(expected.getEnd(), actual.getEnd());
+            assertEquals(expected.getLine(), actual.getLine());
+            assertEquals(expected.getColumn(), actual.getColumn());
+            assertEquals(regex.get(i).getFindings(), lexer.getResults().get(i).getFindings());
+        }
+        assertEquals("[Test1, Test2, Text2, Text9, {{ignore}}]", findings(lexer.getNegatives(), 0));
+    }
+
+    @Test
+    public void script() throws Exception {
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(fromTestDir(""), "js.js", null, "utf-8"))
+                .crawl(new TemplateLexerAction(null, null));
+        assertEquals("[key, ]", findings(lexer.getResults(), 0));
+        assertEquals("[messaged, ignored]", findings(lexer.getResults(), 1));
+        assertEquals("[unmessaged]", findings(lexer.getNegatives(), 0));
+        assertEquals(1, lexer.getNegatives().get(0).getPosition().getLine());
+        assertEquals(8, lexer.getNegatives().get(0).getPosition().getColumn());
+    }
+
+    @Test
+    public void skipCommentsAndCode() throws Exception {
+        File file = File.createTempFile("lexer", ".jsp");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("<html><!-- <p>commented</p> --><%-- jsp comment --%><% String s = \"code\"; %>\n"
+                + "<style>p > a { color: red }</style>\n"
+                + "<script type='text/javascript'>\n"
+                + "  // 'line comment'\n"
+                + "  var a = /* 'block' */ \"text in script\", b = /*- scriptKey */'script default';\n"
+                + "</script>\n"
+                + "<p title='a > b'>Hello <b>World</b> <MSG key=\"k\">Default <i>x</i></MSG> {{ignored}}</p><br/>done\n")
+                .getBytes("utf-8"));
+        out.close();
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8"))
+                .crawl(new TemplateLexerAction("msg", "key", "\\{\\{.*?\\}\\}", null));
+        file.delete();
+        assertEquals("[scriptKey, k]", findings(lexer.getResults(), 0));
+        assertEquals("[script default, Default <i>x</i>]", findings(lexer.getResults(), 1));
+        assertEquals("[text in script, b'>Hello, World, done]", findings(lexer.getNegatives(), 0));
+        assertEquals(5, lexer.getResults().get(0).getPosition().getLine());
+        assertEquals(7, lexer.getNegatives().get(3).getPosition().getLine());
+    }
+
+    @Test
+    public void regexLiteralsInScript() throws Exception {
+        File file = File.createTempFile("lexer", ".js");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("var s = t.replace(/'/g, \"\\\\'\"), half = a / 2, r = /[/\"]/;\n"
+                + "return /x'/.test(s) ? 'yes' : 'no';\n")
+                .getBytes("utf-8"));
+        out.close();
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8"))
+                .crawl(new TemplateLexerAction(null, null));
+        file.delete();
+        assertEquals("[\\\\', yes, no]", findings(lexer.getNegatives(), 0));
+    }
+
+    @Test(timeout = 10000)
+    public void unclosedMessagesAreLinear() throws Exception {
+        File file = File.createTempFile("lexer", ".html");
+        FileOutputStream out = new FileOutputStream(file);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            s.append("<msg key='k").append(i).append("'>unclosed ");
+        }
+        out.write(s.toString().getBytes("utf-8"));
+        out.close();
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8"))
+                .crawl(new TemplateLexerAction(null, null));
+        file.delete();
+        assertEquals(0, lexer.getResults().size());
+        assertEquals(100000, lexer.getNegatives().size());
+    }
+
+    @Test
+    public void unmatchedQuoteEndsWithTag() throws Exception {
+        File file = File.createTempFile("lexer", ".html");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("<p><img alt=don't> Picture</p> <msg key='k'>Default</msg> <p title=\"open>Text</p>\n<b>Bold</b>".getBytes("utf-8"));
+        out.close();
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8"))
+                .crawl(new TemplateLexerAction(null, null));
+        file.delete();
+        assertEquals("[k]", findings(lexer.getResults(), 0));
+        assertEquals("[Picture, Text, Bold]", findings(lexer.getNegatives(), 0));
+    }
+
+    @Test(timeout = 10000)
+    public void commentsInScriptsAreLinear() throws Exception {
+        File file = File.createTempFile("lexer", ".html");
+        FileOutputStream out = new FileOutputStream(file);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            s.append("<script>//x</script><script>/*</script><p>t").append(i).append("</p>");
+        }
+        out.write(s.toString().getBytes("utf-8"));
+        out.close();
+        TemplateLexerAction lexer = new FileCrawler(new CrawlPattern(file.getParentFile(), file.getName(), null, "utf-8"))
+                .crawl(new TemplateLexerAction(null, null));
+        file.delete();
+        assertEquals(50000, lexer.getNegatives().size());
+    }
+
+    private String findings(List<FindResult> results, int index) {
+        List<String> findings = new ArrayList<String>();
+        for (FindResult result : results) {
+            findings.add(result.getFindings().get(index));
+        }
+        return findings.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package stni.languager.crawl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import stni.languager.BaseTest;
+
+/**
+ *
+ */
+public class ValueTableTest extends BaseTest {
+    @Test
+    public void escapedValues() {
+        Properties defaults = new Properties();
+        defaults.setProperty("default", "d<");
+        Properties props = new Properties(defaults);
+        for (int i = 0; i < 1000; i++) {
+            props.setProperty("key" + i, "<" + i + "&>");
+        }
+        props.setProperty("Aa", "collides with BB");
+        props.setProperty("BB", "collides with Aa");
+        ValueTable table = new ValueTable(props, Arrays.asList(new Escape("&", "&amp;"), new Escape("<", "&lt;")));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("&lt;" + i + "&amp;>", table.get("key" + i));
+        }
+        assertEquals("collides with BB", table.get("Aa"));
+        assertEquals("collides with Aa", table.get("BB"));
+        assertEquals("d&lt;", table.get("default"));
+        assertNull(table.get("key1000"));
+        assertNull(new ValueTable(new Properties(), null).get("x"));
+    }
+
+    @Test(timeout = 10000)
+    public void onlyDefaults() {
+        Properties defaults = new Properties();
+        for (int i = 0; i < 100; i++) {
+            defaults.setProperty("key" + i, "value" + i);
+        }
+        ValueTable table = new ValueTable(new Properties(defaults), null);
+        assertEquals("value99", table.get("key99"));
+        assertNull(table.get("missing"));
+    }
+}
@@ -5,7 +5,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -16,6 +18,8 @@ import org.codehaus.classworlds.ClassWorld;
 
 import stni.languager.FindResult;
 import stni.languager.SourcePosition;
+import stni.languager.crawl.CrawlProfile;
+import stni.languager.crawl.FindRegexAction;
 
 /**
  * @phase generate-resources
@@ -63,6 +67,21 @@ public abstract class AbstractI18nMojo extends AbstractMojo {
      */
     protected String customizerClass;
 
+    /**
+     * @parameter expression="${threads}" default-value="1"
+     */
+    protected int threads = 1;
+
+    /**
+     * @parameter expression="${ioThreads}" default-value="0"
+     */
+    protected int ioThreads;
+
+    /**
+     * @parameter expression="${profile}" default-value="true"
+     */
+    protected boolean profile = true;
+
     private DelegatingLogger logger;
 
     protected void initLogger() throws IOException {
@@ -82,6 +101,31 @@ public abstract class AbstractI18nMojo extends AbstractMojo {
         logger = new DelegatingLogger(printWriter, mavenLog);
     }
 
+    /**
+     * Logs the steps every regex needed, summed over all actions using it.
+     */
+    protected void logSteps(List<? extends FindRegexAction> actions) {
+        final Map<String, Long> steps = new LinkedHashMap<String, Long>();
+        for (FindRegexAction action : actions) {
+            final Long sum = steps.get(action.getRegex().pattern());
+            steps.put(action.getRegex().pattern(), (sum == null ? 0 : sum) + action.getSteps());
+        }
+        for (Map.Entry<String, Long> regex : steps.entrySet()) {
+            getLog().info("Regex '" + regex.getKey() + "' needed " + regex.getValue() + " steps");
+        }
+    }
+
+    /**
+     * Writes the profile next to languager.log.
+     */
+    protected void writeProfile(CrawlProfile crawlProfile) throws IOException {
+        if (profile) {
+            File target = new File(project.getBuild().getDirectory());
+            target.mkdirs();
+            crawlProfile.writeJson(new File(target, "languager-profile.json"));
+        }
+    }
+
     protected DelegatingLogger getLogger() {
         return logger;
     }
@@ -3,7 +3,9 @@ package stni.languager.maven;
 import static stni.languager.crawl.FindRegexAction.Flag.TRIM;
 import static stni.languager.crawl.FindRegexAction.Flag.WITH_EMPTY;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
@@ -14,6 +16,13 @@ import org.apache.maven.plugin.MojoFailureException;
 import stni.languager.FindResult;
 import stni.languager.KeyExtractor;
 import stni.languager.crawl.CrawlPattern;
+import stni.languager.crawl.CrawlPipeline;
+import stni.languager.crawl.CrawlProfile;
+import stni.languager.crawl.CrawlStatistics;
+import stni.languager.crawl.FindRegexAction;
+import stni.languager.crawl.FindResultCache;
+import stni.languager.crawl.QuotingAwareFindRegexAction;
+import stni.languager.crawl.TemplateLexerAction;
 
 /**
  * @author stni
@@ -21,6 +30,7 @@ import stni.languager.crawl.CrawlPattern;
  * @requiresDependencyResolution compile
  */
 public class ExtractKeysMojo extends AbstractI18nMojo {
+    private static final String CACHE_FILE = "languager-cache.bin";
 
     /**
      * @parameter expression="${searches}"
@@ -37,14 +47,29 @@ public class ExtractKeysMojo extends AbstractI18nMojo {
      */
     protected boolean removeNewLines = true;
 
-    private KeyExtractor extractor = new KeyExtractor();
+    /**
+     * Reuses the results of unchanged files from the last run, kept in target/languager-cache.bin.
+     *
+     * @parameter expression="${incremental}" default-value="false"
+     */
+    protected boolean incremental;
+
+    private KeyExtractor extractor;
+    private CrawlProfile crawlProfile;
 
     public void execute() throws MojoExecutionException, MojoFailureException {
         getLog().info("Start extracting message keys");
+        checkSearches();
         try {
             initLogger();
+            final FindResultCache cache = incremental ? FindResultCache.load(new File(project.getBuild().getDirectory(), CACHE_FILE)) : null;
+            extractor = new KeyExtractor(threads, cache);
 
             extractFromFiles();
+            if (cache != null) {
+                cache.save();
+                getLog().info("Reused results of " + cache.getHits() + " unchanged files, crawled " + cache.getMisses() + " files");
+            }
 
             if (!getLogger().isEmpty()) {
                 checkSameDefaultValues();
@@ -60,6 +85,7 @@ public class ExtractKeysMojo extends AbstractI18nMojo {
             }
 
             extractor.writeCsv(getCsvFile(), csvEncoding, csvSeparator);
+            writeProfile(crawlProfile);
         } catch (Exception e) {
             throw new MojoExecutionException("Problem extracting keys", e);
         } finally {
@@ -67,17 +93,71 @@ public class ExtractKeysMojo extends AbstractI18nMojo {
         }
     }
 
+    /**
+     * The lexer finds messages and negatives itself, so regexes configured for the same search would be ignored.
+     */
+    private void checkSearches() throws MojoExecutionException {
+        for (ExtractSearch search : searches) {
+            if (search.isLexer() && (search.getRegex() != null || search.getNegativeRegex() != null)) {
+                throw new MojoExecutionException("The search for '" + search.getIncludes()
+                        + "' uses the lexer, so it must not have a regex or negativeRegex");
+            }
+        }
+    }
+
     private void extractFromFiles() throws IOException {
+        final CrawlPipeline pipeline = new CrawlPipeline(threads).setIoThreads(ioThreads);
+        final List<FindRegexAction> actions = new ArrayList<FindRegexAction>();
         for (ExtractSearch search : searches) {
+            final CrawlPattern pattern = new CrawlPattern(searchBasedir(), search.getIncludes(), search.getExcludes(), search.getEncoding());
+            if (search.getWindowThreshold() != null) {
+                pattern.setWindowThreshold(search.getWindowThreshold());
+            }
+            if (search.getMaxMatchLength() != null) {
+                pattern.setMaxMatchLength(search.getMaxMatchLength());
+            }
+            if (search.getMaxFileSize() != null) {
+                pattern.setMaxFileSize(search.getMaxFileSize());
+            }
+            if (search.getMatchStepBudget() != null) {
+                pattern.setMatchStepBudget(search.getMatchStepBudget());
+            }
+            if (search.isLexer()) {
+                extractor.extractFromFiles(pipeline, pattern,
+                        new TemplateLexerAction(search.getMessageTag(), search.getKeyAttribute(), search.getIgnoreRegex(), extractor.getCache()));
+                continue;
+            }
             if (search.getRegex() != null) {
-                extractor.extractFromFiles(
-                        new CrawlPattern(searchBasedir(), search.getIncludes(), search.getExcludes(), search.getEncoding()),
-                        search.getRegex(), EnumSet.of(TRIM, WITH_EMPTY));
+                final FindRegexAction action = findAction(search, search.getRegex(), null, EnumSet.of(TRIM, WITH_EMPTY));
+                actions.add(action);
+                extractor.extractFromFiles(pipeline, pattern, action);
             }
             if (search.getNegativeRegex() != null) {
-                extractor.extractNegativesFromFiles(
-                        new CrawlPattern(searchBasedir(), search.getIncludes(), search.getExcludes(), search.getEncoding()),
-                        search.getNegativeRegex(), search.getIgnoreRegex(), EnumSet.of(TRIM));
+                final FindRegexAction action = findAction(search, search.getNegativeRegex(), search.getIgnoreRegex(), EnumSet.of(TRIM));
+                actions.add(action);
+                extractor.extractNegativesFromFiles(pipeline, pattern, action);
+            }
+        }
+        pipeline.crawl();
+        logSkipped(pipeline.getStatistics());
+        logSteps(actions);
+        crawlProfile = pipeline.getProfile();
+        crawlProfile.setSymbols(extractor.getSymbols());
+    }
+
+    private FindRegexAction findAction(ExtractSearch search, String regex, String ignoreRegex, EnumSet<FindRegexAction.Flag> flags) {
+        if (search.getInTag() == null) {
+            return new FindRegexAction(regex, ignoreRegex, flags, extractor.getCache());
+        }
+        return new QuotingAwareFindRegexAction(regex, ignoreRegex, flags, extractor.getCache(), search.getInTag());
+    }
+
+    private void logSkipped(CrawlStatistics statistics) {
+        if (statistics.getBinaryFiles() > 0 || statistics.getOversizedFiles() > 0) {
+            getLog().info("Skipped " + statistics.getBinaryFiles() + " binary files (" + statistics.getBinaryBytes() + " bytes) and "
+                    + statistics.getOversizedFiles() + " files exceeding maxFileSize (" + statistics.getOversizedBytes() + " bytes)");
+            for (File skipped : statistics.getSkippedFiles()) {
+                getLog().debug("Skipped " + skipped);
             }
         }
     }
@@ -1,11 +1,21 @@
 package stni.languager.maven;
 
+import stni.languager.crawl.TemplateLexerAction;
+
 /**
  *
  */
 public class ExtractSearch extends BaseSearch {
     private String negativeRegex;
     private String ignoreRegex;
+    private Long windowThreshold;
+    private Integer maxMatchLength;
+    private Long maxFileSize;
+    private Long matchStepBudget;
+    private Boolean inTag;
+    private boolean lexer;
+    private String messageTag = TemplateLexerAction.DEFAULT_MESSAGE_TAG;
+    private String keyAttribute = TemplateLexerAction.DEFAULT_KEY_ATTRIBUTE;
 
     public String getNegativeRegex() {
         return negativeRegex;
@@ -22,4 +32,77 @@ public class ExtractSearch extends BaseSearch {
     public void setIgnoreRegex(String ignoreRegex) {
         this.ignoreRegex = ignoreRegex;
     }
+
+    public Long getWindowThreshold() {
+        return windowThreshold;
+    }
+
+    public void setWindowThreshold(Long windowThreshold) {
+        this.windowThreshold = windowThreshold;
+    }
+
+    public Integer getMaxMatchLength() {
+        return maxMatchLength;
+    }
+
+    public void setMaxMatchLength(Integer maxMatchLength) {
+        this.maxMatchLength = maxMatchLength;
+    }
+
+    public Long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(Long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public Long getMatchStepBudget() {
+        return matchStepBudget;
+    }
+
+    /**
+     * The number of character accesses a regex may need for one match, before it is aborted as backtracking catastrophically.
+     */
+    public void setMatchStepBudget(Long matchStepBudget) {
+        this.matchStepBudget = matchStepBudget;
+    }
+
+    public Boolean getInTag() {
+        return inTag;
+    }
+
+    /**
+     * If set, only matches inside of tags (true) or outside of tags (false) are found.
+     */
+    public void setInTag(Boolean inTag) {
+        this.inTag = inTag;
+    }
+
+    public boolean isLexer() {
+        return lexer;
+    }
+
+    /**
+     * If true, messages and negatives are extracted by a lexer for HTML, JSP and JS instead of the regexes.
+     */
+    public void setLexer(boolean lexer) {
+        this.lexer = lexer;
+    }
+
+    public String getMessageTag() {
+        return messageTag;
+    }
+
+    public void setMessageTag(String messageTag) {
+        this.messageTag = messageTag;
+    }
+
+    public String getKeyAttribute() {
+        return keyAttribute;
+    }
+
+    public void setKeyAttribute(String keyAttribute) {
+        this.keyAttribute = keyAttribute;
+    }
 }
@@ -2,8 +2,14 @@ package stni.languager.maven;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import org.apache.maven.plugin.MojoExecutionException;
@@ -12,10 +18,13 @@ import org.codehaus.plexus.util.FileUtils;
 
 import stni.languager.crawl.CrawlAction;
 import stni.languager.crawl.CrawlPattern;
+import stni.languager.crawl.CrawlPipeline;
+import stni.languager.crawl.CrawlProfile;
 import stni.languager.crawl.FileCrawler;
 import stni.languager.crawl.ReplacePropertiesAction;
 import stni.languager.crawl.ReplaceRegexAction;
 import stni.languager.crawl.ReplaceRegexActionParameter;
+import stni.languager.crawl.TargetWriter;
 
 /**
  * @author stni
@@ -46,6 +55,23 @@ public class ReplaceKeysMojo extends AbstractI18nMojo {
      */
     protected File propertiesDirectory;
 
+    /**
+     * @parameter expression="${singlePass}" default-value="true"
+     */
+    protected boolean singlePass = true;
+
+    /**
+     * The number of threads writing the replaced files behind the crawl, 0 to write them synchronously.
+     *
+     * @parameter expression="${writeThreads}" default-value="0"
+     */
+    protected int writeThreads = 0;
+
+    /**
+     * @parameter expression="${writeCapacity}" default-value="67108864"
+     */
+    protected int writeCapacity = 64 * 1024 * 1024;
+
     public void execute() throws MojoExecutionException, MojoFailureException {
         if (customizerClass != null) {
             getLog().info("Running customizer " + customizerClass);
@@ -59,30 +85,129 @@ public class ReplaceKeysMojo extends AbstractI18nMojo {
             }
         }
         getLog().info("Start replacing keys");
+        final TargetWriter writer = new TargetWriter(writeThreads, writeCapacity);
+        final CrawlProfile crawlProfile = new CrawlProfile();
+        final List<ReplaceRegexAction> regexActions = new ArrayList<ReplaceRegexAction>();
+        Exception failure = null;
         try {
             List<File> props = FileUtils.getFiles(propertiesDirectory, baseName + "_*" + PROPERTIES, null);
-            for (File prop : props) {
-                int pos = prop.getName().indexOf("_");
-                String lang = prop.getName().substring(pos + 1, prop.getName().length() - PROPERTIES.length());
-                Properties p = new Properties();
-                p.load(new FileInputStream(prop));
-                for (ReplaceSearch search : searches) {
-                    FileCrawler crawler = new FileCrawler(
-                            new CrawlPattern(new File(searchBasedir().getAbsolutePath().replace("$lang", lang)), search.getIncludes(), search.getExcludes(), search.getEncoding()));
-                    final File targetDir = new File(replacedDirectory, lang);
-                    CrawlAction action;
-                    if (search.getRegex() == null) {
-                        action = new ReplacePropertiesAction(p, targetDir);
-                    } else {
-                        ReplaceRegexActionParameter actionParameter = new ReplaceRegexActionParameter(
-                                targetDir, search.getReplacement(), search.getParameterMarker(), search.getParameterSeparator(), p, search.getEscapes());
-                        action = new ReplaceRegexAction(search.getRegex(), null, actionParameter);
+            if (singlePass) {
+                replaceInOnePass(props, writer, crawlProfile, regexActions);
+            } else {
+                for (File prop : props) {
+                    String lang = language(prop);
+                    Properties p = loadProperties(prop);
+                    for (ReplaceSearch search : searches) {
+                        FileCrawler crawler = new FileCrawler(crawlPattern(search, lang), threads).setIoThreads(ioThreads).setProfile(crawlProfile);
+                        final File targetDir = new File(replacedDirectory, lang);
+                        CrawlAction action;
+                        if (search.getRegex() == null) {
+                            action = new ReplacePropertiesAction(p, targetDir, writer);
+                        } else {
+                            final ReplaceRegexAction regexAction = new ReplaceRegexAction(search.getRegex(), null,
+                                    Collections.singletonList(actionParameter(search, targetDir, p)), writer);
+                            regexActions.add(regexAction);
+                            action = regexAction;
+                        }
+                        crawler.crawl(action);
                     }
-                    crawler.crawl(action);
                 }
             }
         } catch (Exception e) {
-            throw new MojoExecutionException("Problem replacing keys", e);
+            failure = e;
+        } finally {
+            failure = closeWriter(writer, failure);
+        }
+        if (failure != null) {
+            throw new MojoExecutionException("Problem replacing keys", failure);
         }
+        logSteps(regexActions);
+        try {
+            writeProfile(crawlProfile);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Problem writing the crawl profile", e);
+        }
+        getLog().info("Wrote " + writer.getWritten() + " files, skipped " + writer.getSkipped() + " unchanged files");
+    }
+
+    /**
+     * Waits for the files written behind, also if the crawl failed, so no writer thread outlives the mojo.
+     *
+     * @return the failure of the crawl with a failed write attached, or the failed write if the crawl succeeded.
+     */
+    private Exception closeWriter(TargetWriter writer, Exception failure) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    /**
+     * Crawls all searches for all languages together, so every source file is read once.
+     * Languages that share a search basedir are replaced by one action, which matches every file only once.
+     */
+    private void replaceInOnePass(List<File> props, TargetWriter writer, CrawlProfile crawlProfile,
+                                  List<ReplaceRegexAction> regexActions) throws IOException {
+        final Map<String, Properties> properties = new LinkedHashMap<String, Properties>();
+        for (File prop : props) {
+            properties.put(language(prop), loadProperties(prop));
+        }
+        final CrawlPipeline pipeline = new CrawlPipeline(threads).setIoThreads(ioThreads).setProfile(crawlProfile);
+        for (ReplaceSearch search : searches) {
+            final Map<String, List<ReplaceRegexActionParameter>> parametersByBasedir = new LinkedHashMap<String, List<ReplaceRegexActionParameter>>();
+            final Map<String, String> languageOfBasedir = new HashMap<String, String>();
+            for (Map.Entry<String, Properties> entry : properties.entrySet()) {
+                final String lang = entry.getKey();
+                final File targetDir = new File(replacedDirectory, lang);
+                if (search.getRegex() == null) {
+                    pipeline.add(crawlPattern(search, lang), new ReplacePropertiesAction(entry.getValue(), targetDir, writer));
+                } else {
+                    final String basedir = crawlPattern(search, lang).getBasedir().getPath();
+                    List<ReplaceRegexActionParameter> parameters = parametersByBasedir.get(basedir);
+                    if (parameters == null) {
+                        parameters = new ArrayList<ReplaceRegexActionParameter>();
+                        parametersByBasedir.put(basedir, parameters);
+                        languageOfBasedir.put(basedir, lang);
+                    }
+                    parameters.add(actionParameter(search, targetDir, entry.getValue()));
+                }
+            }
+            for (Map.Entry<String, List<ReplaceRegexActionParameter>> entry : parametersByBasedir.entrySet()) {
+                final ReplaceRegexAction action = new ReplaceRegexAction(search.getRegex(), null, entry.getValue(), writer);
+                regexActions.add(action);
+                pipeline.add(crawlPattern(search, languageOfBasedir.get(entry.getKey())), action);
+            }
+        }
+        pipeline.crawl();
+    }
+
+    private String language(File prop) {
+        int pos = prop.getName().indexOf("_");
+        return prop.getName().substring(pos + 1, prop.getName().length() - PROPERTIES.length());
+    }
+
+    private Properties loadProperties(File prop) throws IOException {
+        Properties p = new Properties();
+        FileInputStream in = new FileInputStream(prop);
+        try {
+            p.load(in);
+        } finally {
+            in.close();
+        }
+        return p;
+    }
+
+    private CrawlPattern crawlPattern(ReplaceSearch search, String lang) {
+        return new CrawlPattern(new File(searchBasedir().getAbsolutePath().replace("$lang", lang)), search.getIncludes(), search.getExcludes(), search.getEncoding());
+    }
+
+    private ReplaceRegexActionParameter actionParameter(ReplaceSearch search, File targetDir, Properties p) {
+        return new ReplaceRegexActionParameter(
+                targetDir, search.getReplacement(), search.getParameterMarker(), search.getParameterSeparator(), p, search.getEscapes());
     }
-}
\ No newline at end of file
+}